@@ -1,14 +1,16 @@
 package cz.cuni.mff.mbohin;
 
-import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.adapters.ProductLoader;
 import cz.cuni.mff.mbohin.productParser.adapters.rohlik.RohlikAdapter;
 import cz.cuni.mff.mbohin.productParser.adapters.kosik.KosikAdapter;
 import cz.cuni.mff.mbohin.productParser.adapters.tesco.TescoAdapter;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
 import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
 import cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder.EqualProductsFinder;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The main class of the application, responsible for initiating the process of parsing and comparing products
@@ -21,34 +23,26 @@ public class App
      * The main method that serves as the entry point for the application.
      * It performs the following tasks:
      * <ul>
-     * <li>Parses products from Kosik, Tesco, and Rohlik e-shops using respective adapters.</li>
-     * <li>Initializes the EqualProductsFinder with the parsed products.</li>
-     * <li>Asynchronously sorts and identifies probable equal products.</li>
+     * <li>Parses products from Kosik, Tesco, and Rohlik e-shops concurrently using respective adapters.</li>
+     * <li>Asynchronously sorts and identifies probable equal products, re-matching only the changes since the previous run if its results can be restored.</li>
      * <li>Measures and prints the duration of the operation.</li>
      * </ul>
      *
      * @param args command-line arguments (not used)
      * @throws IOException if an I/O error occurs during product parsing
-     * @throws InterruptedException if the sorting process is interrupted
+     * @throws InterruptedException if the parsing or sorting process is interrupted
      */
     @SuppressWarnings("unused")
     public static void main(String[] args) throws IOException, InterruptedException {
         long startTime = System.nanoTime();
 
-        // Parsing Kosik products
-        /**/KosikAdapter ka = new KosikAdapter();
-        List<NormalizedProduct> kosikProducts = ka.getNormalizedProducts();/**/
+        // Parsing Kosik, Tesco and Rohlik products concurrently
+        /**/Map<Eshop, List<NormalizedProduct>> products = ProductLoader.loadAll(List.of(new KosikAdapter(), new TescoAdapter(), new RohlikAdapter()));
+        List<NormalizedProduct> kosikProducts = products.get(Eshop.KOSIK);
+        List<NormalizedProduct> tescoProducts = products.get(Eshop.TESCO);
+        List<NormalizedProduct> rohlikProducts = products.get(Eshop.ROHLIK);/**/
 
-        // Parsing Tesco products
-        /**/TescoAdapter ta = new TescoAdapter();
-        List<NormalizedProduct> tescoProducts = ta.getNormalizedProducts();/**/
-
-        // Parsing Rohlik products
-        /**/RohlikAdapter ra = new RohlikAdapter();
-        List<NormalizedProduct> rohlikProducts = ra.getNormalizedProducts(RuntimeConfig.zipExtractPath);/**/
-
-        /**/EqualProductsFinder epf = new EqualProductsFinder(kosikProducts, rohlikProducts, tescoProducts);
-        epf.sortProbableEqualProductsAsync();  /**/
+        /**/EqualProductsFinder epf = EqualProductsFinder.sortProbableEqualProductsIncrementally(kosikProducts, rohlikProducts, tescoProducts);  /**/
 
         long endTime = System.nanoTime();
         long duration = (endTime - startTime) / 1_000_000;
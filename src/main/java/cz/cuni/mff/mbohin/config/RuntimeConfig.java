@@ -1,5 +1,6 @@
 package cz.cuni.mff.mbohin.config;
 
+import cz.cuni.mff.mbohin.sameProductEstimator.CandidateGenerator;
 
 /**
  * Provides configuration settings for the product parser system. This class contains constants used across
@@ -11,8 +12,47 @@ package cz.cuni.mff.mbohin.config;
  * <li>{@code kosikProductDataRelativePath} - Path to the Kosik e-shop product data file in JSON format.</li>
  * <li>{@code rohlikZipesRelativePath} - Path to the Rohlik e-shop product data compressed file (ZIP).</li>
  * <li>{@code tescoProductDataRelativePath} - Path to the Tesco e-shop product data file in JSON format.</li>
- * <li>{@code zipExtractPath} - Directory path where ZIP files are extracted during processing.</li>
  * <li>{@code limitProcessedProducts} - The maximum number of products to process, which can be used to limit processing during development or testing.</li>
+ * <li>{@code fullCatalogueScoring} - When true, every product of the smaller e-shop of each pair is scored and {@code limitProcessedProducts} is ignored.</li>
+ * <li>{@code scoringParallelism} - The number of worker threads of the work-stealing pool scoring products.</li>
+ * <li>{@code scoringChunkSize} - The largest range of products scored by one fork-join task, smaller ranges balance load better.</li>
+ * <li>{@code retainedCandidatesPerRanking} - The number of best candidates kept and logged for each product and similarity type, 0 keeps all.</li>
+ * <li>{@code minRankedSimilarity} - Only candidates scoring at least this similarity are kept and logged, with {@code retainedCandidatesPerRanking} set to 0 this keeps everything above the threshold.</li>
+ * <li>{@code scoringProgressInterval} - The number of scored products of one e-shop pair between two progress reports, 0 reports only completion.</li>
+ * <li>{@code streamJsonIngestion} - When true, adapters read the json array element by element from an input stream instead of loading the whole file into memory.</li>
+ * <li>{@code parallelZipEntryIngestion} - When true, json entries of a zip archive are ingested in parallel.</li>
+ * <li>{@code parallelAdapterLoading} - When true, adapters of all e-shops are run concurrently on virtual threads.</li>
+ * <li>{@code parallelNormalization} - When true, deserialized products are normalized in parallel chunks on the fork-join pool.</li>
+ * <li>{@code normalizationChunkSize} - The number of products normalized by one fork-join task.</li>
+ * <li>{@code useProductSnapshots} - When true, normalized products are restored from a binary snapshot if their data source has not changed.</li>
+ * <li>{@code snapshotDirectory} - Directory where binary snapshots of normalized products are stored.</li>
+ * <li>{@code incrementalMatching} - When true, the rankings of the previous run are restored from its results file and only products affected by catalogue changes since are scored, disable it once after changing settings affecting the rankings.</li>
+ * <li>{@code candidateTopK} - The maximum number of candidates with the highest IDF weighted token overlap passed to similarity calculators per product, 0 for no limit.</li>
+ * <li>{@code minCandidateOverlapWeight} - The minimum IDF weighted token overlap a candidate needs to be passed to similarity calculators.</li>
+ * <li>{@code bitParallelStringMetrics} - When true, edit distance and longest common subsequence of names up to 64 characters are computed by bit-parallel algorithms.</li>
+ * <li>{@code minEditDistanceSimilarity} - Length-adjusted edit distance similarities below this value are not computed exactly, 0.0 computes all of them.</li>
+ * <li>{@code maxSubstringDocumentFrequencyRatio} - Name substrings contained in a larger fraction of an e-shop's products are suppressed in candidate generation, 1.0 disables the cutoff.</li>
+ * <li>{@code learnStopSubstrings} - When true, substrings suppressed by the document frequency cutoff are learned into a stop-list applied to all e-shops.</li>
+ * <li>{@code stopSubstringsPath} - Path of the file the stop-list learned in the last run is written to, one substring per line.</li>
+ * <li>{@code cascadeScoring} - When true, the expensive similarity measures are calculated only for candidates surviving the cheap gate measures (substring and prefix similarity).</li>
+ * <li>{@code cascadeMinGateSimilarity} - A candidate survives the cascade gates if any gate measure scores it at least this similarity.</li>
+ * <li>{@code cascadeGateTopN} - A candidate also survives the cascade gates if it is among this many best candidates by any gate measure, 0 disables this rule.</li>
+ * <li>{@code combinedScoreWeights} - Weights of the similarity measures in the combined score as comma separated similarityType=weight entries, unlisted measures have weight 0.</li>
+ * <li>{@code combinedScoreBias} - The constant term added to the weighted sum of the combined score.</li>
+ * <li>{@code logisticCombinedScore} - When true, the weighted sum is passed through the logistic function, so that weights and bias learned by a logistic regression yield a match probability.</li>
+ * <li>{@code assignmentCandidatesPerProduct} - The number of best candidates by the combined score of every product considered by the one-to-one assignment, 0 considers all retained candidates.</li>
+ * <li>{@code minAssignmentScore} - The minimum combined score of a pair matched by the one-to-one assignment.</li>
+ * <li>{@code candidateGenerator} - The index candidates are generated from: whitespace-split name substrings, character 3-grams or MinHash buckets of 3-gram sets.</li>
+ * <li>{@code maxTrigramDocumentFrequencyRatio} - Character 3-grams contained in a larger fraction of an e-shop's products are skipped by the 3-gram candidate generator.</li>
+ * <li>{@code minHashBands} - The number of bands of the MinHash signature, each hashed into one bucket, more bands raise the recall and the number of candidates.</li>
+ * <li>{@code minHashRowsPerBand} - The number of MinHash values per band, more rows make the buckets more selective.</li>
+ * <li>{@code candidateRecallSampleSize} - The number of products whose best match is searched among all products of the other e-shop by all similarity measures to estimate the recall of the candidate generator, 0 disables the estimate, which is meant for tuning the candidate generator rather than for regular runs.</li>
+ * <li>{@code offloadProductDetails} - When true, descriptions, storage conditions and other details never read while matching are moved off the heap and read back on demand.</li>
+ * <li>{@code productDetailsSpillDirectory} - Directory of the spill file holding the offloaded details of products parsed in the current run, truncated at the start and deleted at the end of every run.</li>
+ * <li>{@code resultWriterQueueCapacity} - The number of product rankings the scoring threads may enqueue before they wait for the result writer.</li>
+ * <li>{@code resultWriterBatchSize} - The maximum number of queued product rankings the result writer drains and writes at once.</li>
+ * <li>{@code resultWriterBufferSize} - The size in bytes of the buffer through which ranking records are written into the results file.</li>
+ * <li>{@code resultsCompactionThreshold} - The share of the records of a resumed results file no longer indexed, at which the file is rewritten with only its indexed records.</li>
  * </ul>
  *
  * <p>This configuration class simplifies the management of path and operational settings, ensuring that they are centrally managed and easily accessible
@@ -22,7 +62,46 @@ public class RuntimeConfig {
     public static final String kosikProductDataRelativePath = "./src/main/resources/kosikProductDataIndented.json";
     public static final String rohlikZipesRelativePath = "./src/main/resources/rohlikProductData.zip";
     public static final String tescoProductDataRelativePath = "./src/main/resources/tescoProductData.json";
-    public static final String zipExtractPath = "./out/decompressedFiles/";
     public static final String substringsMappingDirectory = "./out/substringsMappingView/";
     public static final int limitProcessedProducts = 50;
+    public static final boolean fullCatalogueScoring = true;
+    public static final int scoringParallelism = Runtime.getRuntime().availableProcessors();
+    public static final int scoringChunkSize = 16;
+    public static final int retainedCandidatesPerRanking = 100;
+    public static final double minRankedSimilarity = 0.0;
+    public static final int scoringProgressInterval = 1000;
+    public static final boolean streamJsonIngestion = true;
+    public static final boolean parallelZipEntryIngestion = true;
+    public static final boolean parallelAdapterLoading = true;
+    public static final boolean parallelNormalization = true;
+    public static final int normalizationChunkSize = 1024;
+    public static final boolean useProductSnapshots = true;
+    public static final String snapshotDirectory = "./out/snapshots/";
+    public static final boolean incrementalMatching = true;
+    public static final int candidateTopK = 500;
+    public static final double minCandidateOverlapWeight = 0.0;
+    public static final boolean bitParallelStringMetrics = true;
+    public static final double minEditDistanceSimilarity = 0.25;
+    public static final double maxSubstringDocumentFrequencyRatio = 0.05;
+    public static final boolean learnStopSubstrings = true;
+    public static final String stopSubstringsPath = "./out/stopSubstrings.txt";
+    public static final boolean cascadeScoring = false;
+    public static final double cascadeMinGateSimilarity = 0.5;
+    public static final int cascadeGateTopN = 50;
+    public static final String combinedScoreWeights = "substringSimilarity=0.3,prefixSimilarity=0.1,LongestCommonSubsequenceSimilarity=0.3,LengthAdjustedEditationDistance=0.3";
+    public static final double combinedScoreBias = 0.0;
+    public static final boolean logisticCombinedScore = false;
+    public static final int assignmentCandidatesPerProduct = 10;
+    public static final double minAssignmentScore = 0.5;
+    public static final CandidateGenerator candidateGenerator = CandidateGenerator.TOKENS;
+    public static final double maxTrigramDocumentFrequencyRatio = 0.01;
+    public static final int minHashBands = 20;
+    public static final int minHashRowsPerBand = 3;
+    public static final int candidateRecallSampleSize = 0;
+    public static final boolean offloadProductDetails = true;
+    public static final String productDetailsSpillDirectory = "./out/productDetails/";
+    public static final int resultWriterQueueCapacity = 4096;
+    public static final int resultWriterBatchSize = 256;
+    public static final int resultWriterBufferSize = 1 << 16;
+    public static final double resultsCompactionThreshold = 0.5;
 }
@@ -1,16 +1,30 @@
 package cz.cuni.mff.mbohin.productParser.adapters;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
 import cz.cuni.mff.mbohin.productParser.ProductParserLogger;
 import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
 import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
+import cz.cuni.mff.mbohin.productParser.snapshot.ProductDetailsStore;
+import cz.cuni.mff.mbohin.productParser.snapshot.ProductSnapshot;
+import cz.cuni.mff.mbohin.productParser.snapshot.SourceFingerprint;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Provides a framework for adapting product json schemas of online eshops data into a normalized format across different e-shops.
@@ -31,6 +45,7 @@ import java.util.logging.Logger;
 public abstract class Adapter<T> {
     private final Class<T> typeParameterClass;
     private static final Logger LOGGER = Logger.getLogger("Adapter<T> logger");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
     /**
      * Constructs an Adapter instance for the specified type of product model.
@@ -82,34 +97,122 @@ public abstract class Adapter<T> {
 
     /**
      * Retrieves the list of normalized products by loading and parsing JSON data from the data source.
+     * If {@link RuntimeConfig#streamJsonIngestion} is enabled, the data source is streamed element by element,
+     * otherwise the whole file is loaded into memory first. Zip archives are read in place: every JSON entry
+     * of the archive is ingested straight from the archive without extracting it to disk.
+     *
+     * <p>If {@link RuntimeConfig#useProductSnapshots} is enabled and the data source has not changed since the last
+     * run, the products are restored from the {@link ProductSnapshot} instead and no JSON is parsed at all. Otherwise
+     * a new snapshot is written after a successful parse.</p>
+     *
+     * <p>If {@link RuntimeConfig#offloadProductDetails} is enabled, the {@link cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.ProductDetails}
+     * of parsed products are moved into the {@link ProductDetailsStore} once the snapshot has been written, restored products
+     * read them from the snapshot.</p>
      *
      * @return the list of normalized products
      * @throws IOException if an I/O error occurs during data loading
      */
     public List<NormalizedProduct> getNormalizedProducts() throws IOException {
-        String json = FileHandler.loadJsonFromPath(getRelativeDataPath());
-        return parseNormalizedProducts(json);
+        String path = getRelativeDataPath();
+        SourceFingerprint fingerprint = null;
+        if (RuntimeConfig.useProductSnapshots) {
+            fingerprint = SourceFingerprint.of(path);
+            List<NormalizedProduct> snapshot = ProductSnapshot.load(getEshopType(), fingerprint);
+            if (snapshot != null) {
+                System.out.println(getNameOf() + "\nRestored " + snapshot.size() + " normalized products from snapshot.\n");
+                return snapshot;
+            }
+        }
+
+        IngestionResult result = FileHandler.isZipArchive(path) ? ingestZipArchive(path) : ingestJsonFile(path);
+        logProductCounts(result.normalizedProducts(), result.total(), result.invalidCount());
+
+        if (fingerprint != null) {
+            ProductSnapshot.save(getEshopType(), fingerprint, result.normalizedProducts());
+        }
+        if (RuntimeConfig.offloadProductDetails) {
+            ProductDetailsStore.offload(result.normalizedProducts());
+        }
+        return result.normalizedProducts();
+    }
+
+    private IngestionResult ingestJsonFile(String path) throws IOException {
+        if (RuntimeConfig.streamJsonIngestion) {
+            try (InputStream in = FileHandler.openJsonStream(path)) {
+                return streamProducts(in);
+            }
+        }
+
+        return parseProducts(FileHandler.loadJsonFromPath(path));
     }
 
     /**
-     * Retrieves the list of normalized products by loading and parsing JSON data from a specified zip extract path.
+     * Ingests every JSON entry of a zip archive directly from the archive's entry streams. The entries are processed
+     * in parallel if {@link RuntimeConfig#parallelZipEntryIngestion} is enabled, the merged result keeps the order
+     * of the entries in the archive.
      *
-     * @param zipExtractPath the path to the zip extract directory
-     * @return the list of normalized products
-     * @throws IOException if an I/O error occurs during data loading
+     * @param path the path to the zip archive
+     * @return the merged result of all JSON entries
+     * @throws IOException if the archive cannot be read or contains no JSON entry
      */
-    @SuppressWarnings("unused")
-    public List<NormalizedProduct> getNormalizedProducts(String zipExtractPath) throws IOException {
-        String json = FileHandler.loadJsonFromPath(getRelativeDataPath(), zipExtractPath);
-        return parseNormalizedProducts(json);
+    private IngestionResult ingestZipArchive(String path) throws IOException {
+        try (ZipFile zipFile = FileHandler.openZipArchive(path)) {
+            List<ZipEntry> jsonEntries = FileHandler.listJsonEntries(zipFile);
+            if (jsonEntries.isEmpty()) {
+                throw new IOException("No JSON file found in the zip archive: " + path);
+            }
+
+            Stream<ZipEntry> entries = RuntimeConfig.parallelZipEntryIngestion ? jsonEntries.parallelStream() : jsonEntries.stream();
+            List<IngestionResult> results = entries.map(entry -> ingestZipEntry(zipFile, entry)).toList();
+            return IngestionResult.merge(results);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
-    private List<NormalizedProduct> parseNormalizedProducts(String json) {
-        List<T> jsonProducts = deserializeProducts(json);
-        Pair<List<NormalizedProduct>, List<T>> productsPair = processProducts(jsonProducts);
+    private IngestionResult ingestZipEntry(ZipFile zipFile, ZipEntry entry) {
+        try (InputStream in = new BufferedInputStream(zipFile.getInputStream(entry))) {
+            if (RuntimeConfig.streamJsonIngestion) {
+                return streamProducts(in);
+            }
+            return parseProducts(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to ingest zip entry " + entry.getName(), e);
+        }
+    }
 
-        logProductCounts(productsPair.getKey(), jsonProducts.size(), productsPair.getValue().size());
-        return productsPair.getKey();
+    /**
+     * Reads a JSON array of product models from the given input stream one element at a time. The elements are collected
+     * into batches which are normalized and released before the next batch is read, so the peak memory is bounded by the size
+     * of the normalized output rather than by the size of the input.
+     *
+     * @param in the input stream containing a JSON array of product models
+     * @return the normalized products together with the counts of read and invalid product models
+     * @throws IOException if an I/O error occurs or the JSON data is malformed
+     */
+    private IngestionResult streamProducts(InputStream in) throws IOException {
+        int batchSize = RuntimeConfig.parallelNormalization
+                ? RuntimeConfig.normalizationChunkSize * ForkJoinPool.getCommonPoolParallelism()
+                : RuntimeConfig.normalizationChunkSize;
+        List<IngestionResult> results = new ArrayList<>();
+        List<T> batch = new ArrayList<>(batchSize);
+
+        try (MappingIterator<T> iterator = MAPPER.readerFor(typeParameterClass).readValues(in)) {
+            while (iterator.hasNextValue()) {
+                batch.add(iterator.nextValue());
+                if (batch.size() == batchSize) {
+                    results.add(processProducts(batch));
+                    batch.clear();
+                }
+            }
+        }
+        results.add(processProducts(batch));
+
+        return IngestionResult.merge(results);
+    }
+
+    private IngestionResult parseProducts(String json) {
+        return processProducts(deserializeProducts(json));
     }
 
     /**
@@ -130,38 +233,78 @@ public abstract class Adapter<T> {
         }
     }
 
-    private Pair<List<NormalizedProduct>, List<T>> processProducts(List<T> products) {
-        List<NormalizedProduct> normalizedProducts = new ArrayList<>();
-        List<T> invalidProducts = new ArrayList<>();
+    /**
+     * Validates and normalizes a list of product models. If {@link RuntimeConfig#parallelNormalization} is enabled, the list
+     * is split into chunks of {@link RuntimeConfig#normalizationChunkSize} product models which are normalized on the common
+     * fork-join pool, each into its own buffer. The buffers are merged in the order of the chunks, so the output order is
+     * the same as with sequential processing.
+     *
+     * @param products the product models to be normalized
+     * @return the normalized products together with the counts of processed and invalid product models
+     */
+    private IngestionResult processProducts(List<T> products) {
+        int chunkSize = RuntimeConfig.normalizationChunkSize;
+        if (!RuntimeConfig.parallelNormalization || products.size() <= chunkSize) {
+            return normalizeChunk(products);
+        }
+
+        List<ForkJoinTask<IngestionResult>> chunks = new ArrayList<>();
+        for (int from = 0; from < products.size(); from += chunkSize) {
+            List<T> chunk = products.subList(from, Math.min(from + chunkSize, products.size()));
+            chunks.add(ForkJoinTask.adapt(() -> normalizeChunk(chunk)));
+        }
+        ForkJoinTask.invokeAll(chunks);
+
+        List<IngestionResult> results = new ArrayList<>(chunks.size());
+        for (ForkJoinTask<IngestionResult> chunk : chunks) {
+            results.add(chunk.join());
+        }
+        return IngestionResult.merge(results);
+    }
+
+    private IngestionResult normalizeChunk(List<T> products) {
+        List<NormalizedProduct> normalizedProducts = new ArrayList<>(products.size());
+        int invalidCount = 0;
 
         for (T product : products) {
-            Pair<Boolean, NormalizedProduct> result = tryGetNormalized(product);
-            if (result.getKey()) {
-                normalizedProducts.add(result.getValue());
+            if (anyCriticalPropertyIsNull(product)) {
+                invalidCount++;
             } else {
-                invalidProducts.add(product);
+                normalizedProducts.add(unsafeParseNormalizedProduct(product));
             }
         }
 
-        return new Pair<>(normalizedProducts, invalidProducts);
+        return new IngestionResult(normalizedProducts, products.size(), invalidCount);
     }
 
-    private Pair<Boolean, NormalizedProduct> tryGetNormalized(T product) {
-        if (anyCriticalPropertyIsNull(product)) {
-            return new Pair<>(false, null);
-        } else {
-            NormalizedProduct normalizedProduct = unsafeParseNormalizedProduct(product);
-            return new Pair<>(true, normalizedProduct);
+    /**
+     * Normalized products of one data source together with the number of read and rejected product models.
+     *
+     * @param normalizedProducts the successfully normalized products
+     * @param total the number of product models read from the data source
+     * @param invalidCount the number of product models rejected because of missing critical properties
+     */
+    private record IngestionResult(List<NormalizedProduct> normalizedProducts, int total, int invalidCount) {
+        private static IngestionResult merge(List<IngestionResult> results) {
+            List<NormalizedProduct> normalizedProducts = new ArrayList<>();
+            int total = 0, invalidCount = 0;
+            for (IngestionResult result : results) {
+                normalizedProducts.addAll(result.normalizedProducts());
+                total += result.total();
+                invalidCount += result.invalidCount();
+            }
+            return new IngestionResult(normalizedProducts, total, invalidCount);
         }
     }
 
     private void logProductCounts(List<NormalizedProduct> normalizedProducts, int total, int invalidCount) {
         ProductParserLogger.log(normalizedProducts, getEshopType());
 
-        System.out.println(getNameOf());
-        System.out.println(total);
-        System.out.println("Normalized products: " + normalizedProducts.size());
-        System.out.println("Invalid products: " + invalidCount);
-        System.out.println(normalizedProducts.size() + " + " + invalidCount + " = " + total + "\n");
+        // composed into a single print, adapters may be running concurrently
+        System.out.println(getNameOf() + "\n" +
+                total + "\n" +
+                "Normalized products: " + normalizedProducts.size() + "\n" +
+                "Invalid products: " + invalidCount + "\n" +
+                normalizedProducts.size() + " + " + invalidCount + " = " + total + "\n");
     }
 }
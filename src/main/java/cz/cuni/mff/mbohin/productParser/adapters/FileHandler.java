@@ -1,20 +1,20 @@
 package cz.cuni.mff.mbohin.productParser.adapters;
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
  * Utility class for handling file operations such as loading JSON data from paths,
- * extracting files from zip archives, and managing directories.
+ * opening JSON files as streams and reading JSON entries of zip archives in place.
  */
 public class FileHandler {
     /**
@@ -33,123 +33,61 @@ public class FileHandler {
     }
 
     /**
-     * Loads JSON data from a specified path, extracting it from a zip file if necessary.
+     * Opens a buffered input stream over a JSON file, so that its content can be parsed incrementally
+     * without holding the whole file in memory. The caller is responsible for closing the stream.
      *
-     * @param path the path to the zip file
-     * @param extractPath the path to the directory where the zip file will be extracted
-     * @return the JSON data as a string
-     * @throws IOException if an I/O error occurs during extraction or reading
-     */
-    public static String loadJsonFromPath(String path, String extractPath) throws IOException {
-        File extractDir = new File(extractPath);
-        if (extractDir.exists()) {
-            deleteDirectory(extractDir);
-        }
-        assert extractDir.mkdirs();
-
-        unzip(path, extractPath);
-
-        List<File> jsonFiles;
-        try (Stream<Path> paths = Files.walk(Paths.get(extractPath))) {
-            jsonFiles = paths.filter(Files::isRegularFile)
-                    .filter(p -> p.toString().endsWith(".json"))
-                    .map(Path::toFile)
-                    .toList();
-        }
-
-        if (jsonFiles.isEmpty()) {
-            throw new IOException("No JSON file found in the extracted directory.");
-        }
-
-        String json = Files.readString(jsonFiles.getFirst().toPath());
-
-        deleteDirectory(extractDir);  // Clean up extraction directory
-
-        return json;
-    }
-
-    /**
-     * Unzips a specified zip file to a destination directory.
-     *
-     * @param zipFilePath the path to the zip file
-     * @param destDirectory the destination directory where the zip file will be extracted
-     * @throws IOException if an I/O error occurs during extraction
-     */
-    private static void unzip(String zipFilePath, String destDirectory) throws IOException {
-        File destDir = new File(destDirectory);
-        createDirectory(destDir);
-
-        try (ZipFile zipFile = new ZipFile(zipFilePath)) {
-            Enumeration<? extends ZipEntry> entries = zipFile.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-                processZipEntry(zipFile, entry, destDir);
-            }
-        }
-    }
-
-    /**
-     * Creates a directory if it does not exist.
-     *
-     * @param directory the directory to create
-     * @throws IOException if the directory cannot be created
+     * @param relativePath the relative path to the JSON file
+     * @return a buffered input stream reading the JSON file
+     * @throws IOException if the file is not found or cannot be opened
      */
-    private static void createDirectory(File directory) throws IOException {
-        if (!directory.exists() && !directory.mkdirs()) {
-            throw new IOException("Failed to create the directory: " + directory);
+    public static InputStream openJsonStream(String relativePath) throws IOException {
+        Path path = Paths.get(relativePath);
+        if (Files.isRegularFile(path)) {
+            return new BufferedInputStream(Files.newInputStream(path));
         }
+        throw new IOException("File not found: " + relativePath);
     }
 
     /**
-     * Processes a zip entry and extracts it to the destination directory.
+     * Determines whether the specified path points to a zip archive, judging by its extension.
      *
-     * @param zipFile the zip file
-     * @param entry the zip entry
-     * @param destDir the destination directory
-     * @throws IOException if an I/O error occurs during extraction
+     * @param path the path to the data file
+     * @return true if the path denotes a zip archive, false otherwise
      */
-    private static void processZipEntry(ZipFile zipFile, ZipEntry entry, File destDir) throws IOException {
-        File entryDestination = new File(destDir, entry.getName());
-        if (entry.isDirectory()) {
-            createDirectory(entryDestination);
-        } else {
-            File parentDir = entryDestination.getParentFile();
-            createDirectory(parentDir);
-            writeFile(zipFile, entry, entryDestination);
-        }
+    public static boolean isZipArchive(String path) {
+        return path.toLowerCase().endsWith(".zip");
     }
 
     /**
-     * Writes the contents of a zip entry to a file.
+     * Opens a zip archive for reading its entries in place. The caller is responsible for closing the archive.
      *
-     * @param zipFile the zip file
-     * @param entry the zip entry
-     * @param destination the destination file
-     * @throws IOException if an I/O error occurs during writing
+     * @param path the path to the zip archive
+     * @return the opened zip archive
+     * @throws IOException if the archive is not found or cannot be opened
      */
-    private static void writeFile(ZipFile zipFile, ZipEntry entry, File destination) throws IOException {
-        try (InputStream in = zipFile.getInputStream(entry);
-             FileOutputStream out = new FileOutputStream(destination)) {
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = in.read(buffer)) >= 0) {
-                out.write(buffer, 0, length);
-            }
+    public static ZipFile openZipArchive(String path) throws IOException {
+        if (!Files.isRegularFile(Paths.get(path))) {
+            throw new IOException("File not found: " + path);
         }
+        return new ZipFile(path);
     }
 
     /**
-     * Recursively deletes a directory and its contents.
+     * Lists all JSON entries of a zip archive in the order in which they are stored in the archive.
+     * Directory entries and entries with other extensions are skipped.
      *
-     * @param directoryToBeDeleted the directory to be deleted
+     * @param zipFile the opened zip archive
+     * @return the list of JSON entries
      */
-    private static void deleteDirectory(File directoryToBeDeleted) {
-        File[] allContents = directoryToBeDeleted.listFiles();
-        if (allContents != null) {
-            for (File file : allContents) {
-                deleteDirectory(file);
+    public static List<ZipEntry> listJsonEntries(ZipFile zipFile) {
+        List<ZipEntry> jsonEntries = new ArrayList<>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith(".json")) {
+                jsonEntries.add(entry);
             }
         }
-        assert directoryToBeDeleted.delete();
+        return jsonEntries;
     }
 }
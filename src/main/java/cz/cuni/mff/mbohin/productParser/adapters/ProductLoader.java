@@ -0,0 +1,85 @@
+package cz.cuni.mff.mbohin.productParser.adapters;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads normalized products of several e-shops at once. Adapters share no state, so each of them can run on its own
+ * virtual thread: while one adapter waits for its data source, the others keep the cores busy with JSON binding
+ * and normalization. The wall time of every adapter is reported once it finishes.
+ *
+ * <p>If {@link RuntimeConfig#parallelAdapterLoading} is disabled, the adapters are run one after another in the given order.</p>
+ *
+ * @see Adapter
+ */
+public class ProductLoader {
+    /**
+     * Runs all specified adapters and collects their normalized products keyed by e-shop.
+     *
+     * @param adapters the adapters to be run, at most one per e-shop
+     * @return a map from e-shop to the list of its normalized products
+     * @throws IOException if any of the adapters fails to load its data source
+     * @throws InterruptedException if the loading thread is interrupted while waiting for the adapters
+     * @throws IllegalArgumentException if two adapters represent the same e-shop
+     */
+    public static Map<Eshop, List<NormalizedProduct>> loadAll(List<? extends Adapter<?>> adapters) throws IOException, InterruptedException {
+        Map<Eshop, List<NormalizedProduct>> products = new EnumMap<>(Eshop.class);
+        for (Adapter<?> adapter : adapters) {
+            if (products.put(adapter.getEshopType(), List.of()) != null)
+                throw new IllegalArgumentException("Only one adapter per eshop may be loaded, duplicate eshop: " + adapter.getEshopType());
+        }
+
+        if (!RuntimeConfig.parallelAdapterLoading) {
+            for (Adapter<?> adapter : adapters) {
+                products.put(adapter.getEshopType(), loadTimed(adapter));
+            }
+            return products;
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<NormalizedProduct>>> futures = new ArrayList<>();
+            for (Adapter<?> adapter : adapters) {
+                futures.add(executor.submit(() -> loadTimed(adapter)));
+            }
+
+            for (int i = 0; i < adapters.size(); i++) {
+                products.put(adapters.get(i).getEshopType(), awaitResult(futures.get(i)));
+            }
+        }
+
+        return products;
+    }
+
+    private static List<NormalizedProduct> loadTimed(Adapter<?> adapter) throws IOException {
+        long startTime = System.nanoTime();
+        List<NormalizedProduct> products = adapter.getNormalizedProducts();
+        long duration = (System.nanoTime() - startTime) / 1_000_000;
+
+        System.out.println(adapter.getNameOf() + " loaded " + products.size() + " products in " + duration / 1000 + " seconds and " + duration % 1000 + " ms.");
+        return products;
+    }
+
+    private static List<NormalizedProduct> awaitResult(Future<List<NormalizedProduct>> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException)
+                throw ioException;
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new IllegalStateException("Adapter failed unexpectedly.", cause);
+        }
+    }
+}
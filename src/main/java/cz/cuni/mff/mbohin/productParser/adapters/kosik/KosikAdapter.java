@@ -77,14 +77,14 @@ public class KosikAdapter extends Adapter<KosikJsonProduct> {
         BigDecimal price = p.price;
 
         NormalizedProduct normalizedProduct = new NormalizedProduct(name, url, price, Eshop.KOSIK);
-        normalizedProduct.producer = kosikProduct.product.detail.brand != null ? kosikProduct.product.detail.brand.name : null;
-        normalizedProduct.description = kosikProduct.product.detail.description != null && kosikProduct.product.detail.description.length > 0 ? kosikProduct.product.detail.description[0].value : null;
-        normalizedProduct.storageConditions = getStorageConditions(kosikProduct);
+        normalizedProduct.setProducer(kosikProduct.product.detail.brand != null ? kosikProduct.product.detail.brand.name : null);
+        normalizedProduct.setDescription(kosikProduct.product.detail.description != null && kosikProduct.product.detail.description.length > 0 ? kosikProduct.product.detail.description[0].value : null);
+        normalizedProduct.setStorageConditions(getStorageConditions(kosikProduct));
         normalizedProduct.unitType = safeRetrieveUnitType(kosikProduct);
         normalizedProduct.pieces = 1;
         normalizedProduct.weight = null;
         normalizedProduct.volume = null;
-        normalizedProduct.nutritionalValues = toNormalized(kosikProduct.product.detail.nutritionalValues);
+        normalizedProduct.setNutritionalValues(toNormalized(kosikProduct.product.detail.nutritionalValues));
 
         return normalizedProduct;
     }
@@ -70,14 +70,14 @@ public class RohlikAdapter extends Adapter<RohlikJsonProduct> {
         BigDecimal price = rohlikProduct.price.amount;
 
         NormalizedProduct normalizedProduct = new NormalizedProduct(name, url, price, Eshop.ROHLIK);
-        normalizedProduct.producer = rohlikProduct.brand;
-        normalizedProduct.description = rohlikProduct.htmlDescription; // zde bude potreba vyzkum jakym regexpem prevest z html na porovnatelny text
-        normalizedProduct.storageConditions = null; // zde bude potreba vyzkum jakym regexpem vytahnout skladovaci podminky z htmlDescription, rohlik tuhle informaci nema v samostatnem fieldu
+        normalizedProduct.setProducer(rohlikProduct.brand);
+        normalizedProduct.setDescription(rohlikProduct.htmlDescription); // zde bude potreba vyzkum jakym regexpem prevest z html na porovnatelny text
+        normalizedProduct.setStorageConditions(null); // zde bude potreba vyzkum jakym regexpem vytahnout skladovaci podminky z htmlDescription, rohlik tuhle informaci nema v samostatnem fieldu
         normalizedProduct.unitType = parseUnitType(rohlikProduct);
         normalizedProduct.pieces = 1;
         normalizedProduct.weight = null;
         normalizedProduct.volume = null;
-        normalizedProduct.nutritionalValues = null;
+        normalizedProduct.setNutritionalValues(null);
 
         return normalizedProduct;
     }
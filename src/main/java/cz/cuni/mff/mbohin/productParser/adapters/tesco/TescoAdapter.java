@@ -73,7 +73,7 @@ public class TescoAdapter extends Adapter<TescoJsonProduct> {
         normalizedProduct.setPieces(1);
         // normalizedProduct.setWeight(null);
         // normalizedProduct.setVolume(null);
-        normalizedProduct.nutritionalValues = null;  // nutritional values need to be implemented
+        normalizedProduct.setNutritionalValues(null);  // nutritional values need to be implemented
 
         return normalizedProduct;
     }
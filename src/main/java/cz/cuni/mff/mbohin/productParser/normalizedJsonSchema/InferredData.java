@@ -1,51 +1,54 @@
 package cz.cuni.mff.mbohin.productParser.normalizedJsonSchema;
-import java.util.ArrayList;
-import java.util.List;
 import java.text.Normalizer;
 import java.text.Normalizer.Form;
 import java.lang.Character;
 
 /**
- * Represents inferred data from a product name, including split name parts,
- * lowercased name parts, and a unique file name generated from the product name.
+ * Represents inferred data from a product name, including the lowercased name parts interned in the shared
+ * {@link TokenDictionary} and a unique file name generated from the product name.
+ *
+ * <p>The name parts are kept as an array of token ids only, so a part such as "bio" or "100g" is stored once per run
+ * instead of once per product, and parts are compared as integers.</p>
+ *
+ * <p>Nothing is derived when the instance is constructed. The token ids and the unique file name are computed on first use
+ * and cached, so a product which is never indexed or logged never pays for the splitting of its name or for the Unicode
+ * normalization in {@link #filterLetters(String)}. Concurrent first uses may compute a value twice, which is harmless as
+ * the computation is deterministic.</p>
  */
 public class InferredData {
-    private final String[] nameParts;
-    private final List<String> lowerCaseNameParts = new ArrayList<>();
+    private final String productName;
 
-    private final String uniqueFileName;
+    private volatile int[] tokenIds;
+    private volatile String uniqueFileName;
 
     /**
-     * Constructs an InferredData instance from the provided product name.
-     * Splits the product name into parts, converts them to lowercase, and generates a unique file name.
+     * Constructs an InferredData instance deriving its data from the provided product name on first use.
      *
      * @param productName the name of the product
      */
     public InferredData(String productName) {
-        nameParts = productName.split(" ");
-        for (String part : nameParts) {
-            lowerCaseNameParts.add(part.toLowerCase());
-        }
-        uniqueFileName = filterLetters(productName);
-    }
-
-    /**
-     * Returns the parts of the product name.
-     *
-     * @return an array of name parts
-     */
-    @SuppressWarnings("unused")
-    public String[] getNameParts() {
-        return nameParts;
+        this.productName = productName;
     }
 
     /**
-     * Returns the lowercased parts of the product name.
+     * Returns the ids of the lowercased parts of the product name in the shared {@link TokenDictionary}, in the order
+     * of the parts in the name. A part occurring repeatedly in the name occurs repeatedly in the array.
+     * The array must not be modified.
      *
-     * @return a list of lowercased name parts
+     * @return the token ids of the name parts
      */
-    public List<String> getLowerCaseNameParts() {
-        return lowerCaseNameParts;
+    public int[] getTokenIds() {
+        int[] ids = tokenIds;
+        if (ids == null) {
+            String[] nameParts = productName.split(" ");
+            ids = new int[nameParts.length];
+            TokenDictionary dictionary = TokenDictionary.shared();
+            for (int i = 0; i < nameParts.length; i++) {
+                ids[i] = dictionary.intern(nameParts[i].toLowerCase());
+            }
+            tokenIds = ids;
+        }
+        return ids;
     }
 
     /**
@@ -54,7 +57,10 @@ public class InferredData {
      * @return the unique file name
      */
     public String getUniqueFileName() {
-        return uniqueFileName;
+        String fileName = uniqueFileName;
+        if (fileName == null)
+            uniqueFileName = fileName = filterLetters(productName);
+        return fileName;
     }
 
     /**
@@ -81,4 +87,4 @@ public class InferredData {
 
         return stringBuilder.toString();
     }
-}
\ No newline at end of file
+}
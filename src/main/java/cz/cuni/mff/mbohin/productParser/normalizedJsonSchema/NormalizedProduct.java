@@ -19,11 +19,15 @@ import java.math.BigDecimal;
  * <li>{@code url} - The URL to the product page, validated to ensure it is not null or empty.</li>
  * <li>{@code price} - The price of the product, must be a non-negative value.</li>
  * <li>{@code eshop} - The e-shop from which the product originates, indicating the source platform.</li>
- * <li>{@code description}, {@code producer}, {@code storageConditions} - Optional details about the product that can be set after instantiation.</li>
  * <li>{@code unitType}, {@code pieces}, {@code weight}, {@code volume} - Optional units of measurement and quantity details.</li>
- * <li>{@code nutritionalValues} - Nutritional information which can be associated with food items.</li>
+ * <li>{@code inferredData} - The name parts and file name derived from the name on first use.</li>
+ * <li>{@link #details()} - The producer, description, storage conditions and nutritional values, which can be set after instantiation.</li>
  * </ul>
  *
+ * <p>Matching reads only the name, price, URL, units and name tokens of a product. The {@link ProductDetails} are never read
+ * while matching, yet descriptions are the bulk of a product's memory, so they can be {@linkplain #offloadDetails(ProductDetails.Source, long)
+ * offloaded} into a side store and are read back from there only when requested.</p>
+ *
  * <p>Usage of this class allows for the normalization of data where various attributes of products from different sources are standardized,
  * thus simplifying data management and integration tasks.</p>
  */
@@ -32,18 +36,16 @@ public class NormalizedProduct {
     public final BigDecimal price;
     public final Eshop eshop;
 
-    public String producer;
-    public String description;
-    public String storageConditions;
-
     public UnitType unitType;
     public Integer pieces;
     public Double weight, volume;
 
-    public NutritionalValues nutritionalValues;
-
     public final InferredData inferredData;
 
+    private ProductDetails details = ProductDetails.EMPTY;
+    private ProductDetails.Source detailsSource;
+    private long detailsOffset;
+
     /**
      * Constructs a NormalizedProduct instance with the specified name, URL, price, and e-shop.
      * Ensures that name and URL are not null or empty and that price is non-negative.
@@ -73,16 +75,18 @@ public class NormalizedProduct {
         sb.append(price).append("\n");
         sb.append(eshop).append("\n");
         sb.append(url).append("\n");
-        Optional.ofNullable(description).ifPresent(sb::append);
-        Optional.ofNullable(producer).ifPresent(sb::append);
-        Optional.ofNullable(storageConditions).ifPresent(sb::append);
+        // offloaded details are not read back just to describe the product
+        ProductDetails details = detailsSource != null ? ProductDetails.EMPTY : this.details;
+        Optional.ofNullable(details.description()).ifPresent(sb::append);
+        Optional.ofNullable(details.producer()).ifPresent(sb::append);
+        Optional.ofNullable(details.storageConditions()).ifPresent(sb::append);
 
         Optional.ofNullable(unitType).ifPresent(sb::append);
         Optional.ofNullable(pieces).ifPresent(sb::append);
         Optional.ofNullable(weight).ifPresent(sb::append);
         Optional.ofNullable(volume).ifPresent(sb::append);
 
-        Optional.ofNullable(nutritionalValues).ifPresent(sb::append);
+        Optional.ofNullable(details.nutritionalValues()).ifPresent(sb::append);
 
         return sb.toString();
     }
@@ -93,28 +97,80 @@ public class NormalizedProduct {
         return s;
     }
 
+    /**
+     * Returns the details of the product, reading them from the side store if they have been offloaded. The call is not cheap
+     * for offloaded details, every call reads and decodes them again, so callers should keep the returned details as long
+     * as they need them instead of calling this method repeatedly.
+     *
+     * @return the details of the product
+     * @throws java.io.UncheckedIOException if offloaded details can not be read
+     */
+    public ProductDetails details() {
+        ProductDetails.Source source = detailsSource;
+        return source != null ? source.read(detailsOffset) : details;
+    }
+
+    /**
+     * Determines whether the details of the product have been offloaded into a side store.
+     *
+     * @return true if the details are read from a side store on demand
+     */
+    public boolean detailsOffloaded() {
+        return detailsSource != null;
+    }
+
+    /**
+     * Releases the details held by the product, which are from now on read from the specified side store.
+     *
+     * @param source the side store holding the details of the product
+     * @param offset the offset of the details within the side store
+     */
+    public void offloadDetails(ProductDetails.Source source, long offset) {
+        this.detailsSource = source;
+        this.detailsOffset = offset;
+        this.details = null;
+    }
+
     // Setters
 
     /**
      * Sets the description of the product.
      *
      * @param description the description of the product
+     * @throws IllegalStateException if the details have been offloaded, see {@link #setDetails(ProductDetails)}
      */
-    public void setDescription(String description) { this.description = description; }
+    public void setDescription(String description) { updateDetails(heapDetails().withDescription(description)); }
 
     /**
      * Sets the producer of the product.
      *
      * @param producer the producer of the product
+     * @throws IllegalStateException if the details have been offloaded, see {@link #setDetails(ProductDetails)}
      */
-    public void setProducer(String producer) { this.producer = producer; }
+    public void setProducer(String producer) { updateDetails(heapDetails().withProducer(producer)); }
 
     /**
      * Sets the storage conditions of the product.
      *
      * @param conditions the storage conditions of the product
+     * @throws IllegalStateException if the details have been offloaded, see {@link #setDetails(ProductDetails)}
+     */
+    public void setStorageConditions(String conditions) { updateDetails(heapDetails().withStorageConditions(conditions)); }
+
+    /**
+     * Sets the nutritional values of the product.
+     *
+     * @param nutritionalValues the nutritional values of the product
+     * @throws IllegalStateException if the details have been offloaded, see {@link #setDetails(ProductDetails)}
+     */
+    public void setNutritionalValues(NutritionalValues nutritionalValues) { updateDetails(heapDetails().withNutritionalValues(nutritionalValues)); }
+
+    /**
+     * Replaces all details of the product, keeping them on the heap until they are offloaded again.
+     *
+     * @param details the details of the product
      */
-    public void setStorageConditions(String conditions) { this.storageConditions = conditions; }
+    public void setDetails(ProductDetails details) { updateDetails(details); }
 
     /**
      * Sets the number of pieces for the product and updates the unit type to PIECES.
@@ -147,4 +203,19 @@ public class NormalizedProduct {
         this.unitType = UnitType.VOLUME;
         this.volume = volume;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the details held on the heap. Setting a single field of offloaded details would read them back for every field,
+     * so the setters fail fast instead, and offloaded details are replaced as a whole by {@link #setDetails(ProductDetails)}.
+     */
+    private ProductDetails heapDetails() {
+        if (detailsSource != null)
+            throw new IllegalStateException("Details of product " + url + " have been offloaded, replace them by setDetails");
+        return details;
+    }
+
+    private void updateDetails(ProductDetails details) {
+        this.details = details;
+        this.detailsSource = null;
+    }
+}
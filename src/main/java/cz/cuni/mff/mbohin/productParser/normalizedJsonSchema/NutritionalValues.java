@@ -49,6 +49,33 @@ public class NutritionalValues {
         assertIsNonNegative(this.vlaknina);
     }
 
+    /** @return the energy value in kilojoules */
+    public int getEnergetickaHodnotaKJ() { return energetickaHodnotaKJ; }
+
+    /** @return the energy value in kilocalories */
+    public int getEnergetickaHodnotaKCAL() { return energetickaHodnotaKCAL; }
+
+    /** @return the total fat content */
+    public BigDecimal getTuky() { return tuky; }
+
+    /** @return the saturated fat content */
+    public BigDecimal getZTohoNasyceneMastneKyseliny() { return zTohoNasyceneMastneKyseliny; }
+
+    /** @return the total carbohydrate content */
+    public BigDecimal getSacharidy() { return sacharidy; }
+
+    /** @return the sugar content */
+    public BigDecimal getZTohoCukry() { return zTohoCukry; }
+
+    /** @return the protein content */
+    public BigDecimal getBilkoviny() { return bilkoviny; }
+
+    /** @return the salt content */
+    public BigDecimal getSul() { return sul; }
+
+    /** @return the fiber content */
+    public BigDecimal getVlaknina() { return vlaknina; }
+
     /**
      * Asserts that the specified BigDecimal value is non-negative.
      *
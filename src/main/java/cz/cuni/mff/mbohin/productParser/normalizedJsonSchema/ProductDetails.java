@@ -0,0 +1,72 @@
+package cz.cuni.mff.mbohin.productParser.normalizedJsonSchema;
+
+/**
+ * The cold fields of a {@link NormalizedProduct}, which are parsed from the data sources and persisted in snapshots, but never
+ * read while matching products. Descriptions and storage conditions are the bulk of a product's memory, so the details can be
+ * offloaded from the product into a {@link Source} and read back on demand.
+ *
+ * @param producer the producer of the product, or null
+ * @param description the description of the product, or null
+ * @param storageConditions the storage conditions of the product, or null
+ * @param nutritionalValues the nutritional values of the product, or null
+ */
+public record ProductDetails(String producer, String description, String storageConditions, NutritionalValues nutritionalValues) {
+    /**
+     * Details with all fields absent.
+     */
+    public static final ProductDetails EMPTY = new ProductDetails(null, null, null, null);
+
+    /**
+     * A store holding details of products outside of the Java heap, addressed by an offset.
+     */
+    public interface Source {
+        /**
+         * Reads the details stored at the specified offset.
+         *
+         * @param offset the offset returned when the details were stored
+         * @return the details
+         * @throws java.io.UncheckedIOException if the details can not be read
+         */
+        ProductDetails read(long offset);
+    }
+
+    /**
+     * Returns a copy of these details with the specified producer.
+     *
+     * @param producer the producer of the product
+     * @return the updated details
+     */
+    public ProductDetails withProducer(String producer) {
+        return new ProductDetails(producer, description, storageConditions, nutritionalValues);
+    }
+
+    /**
+     * Returns a copy of these details with the specified description.
+     *
+     * @param description the description of the product
+     * @return the updated details
+     */
+    public ProductDetails withDescription(String description) {
+        return new ProductDetails(producer, description, storageConditions, nutritionalValues);
+    }
+
+    /**
+     * Returns a copy of these details with the specified storage conditions.
+     *
+     * @param storageConditions the storage conditions of the product
+     * @return the updated details
+     */
+    public ProductDetails withStorageConditions(String storageConditions) {
+        return new ProductDetails(producer, description, storageConditions, nutritionalValues);
+    }
+
+    /**
+     * Returns a copy of these details with the specified nutritional values.
+     *
+     * @param nutritionalValues the nutritional values of the product
+     * @return the updated details
+     */
+    public ProductDetails withNutritionalValues(NutritionalValues nutritionalValues) {
+        return new ProductDetails(producer, description, storageConditions, nutritionalValues);
+    }
+}
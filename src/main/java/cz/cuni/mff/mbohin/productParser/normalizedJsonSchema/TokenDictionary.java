@@ -0,0 +1,89 @@
+package cz.cuni.mff.mbohin.productParser.normalizedJsonSchema;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dictionary interning lowercase name tokens to dense integer ids. The {@linkplain #shared() shared} dictionary is used by
+ * {@link InferredData} of all products within one run, so that a token has the same id in every catalogue, every distinct token
+ * is stored once and token equality becomes an integer comparison. Further dictionaries may be created for other kinds of keys,
+ * such as character grams.
+ *
+ * <p>Ids are assigned in the order of the first occurrence of a token and they are never reused. Ids are only valid within
+ * the run, persisted data has to store the tokens themselves. Looking up an interned token or the token of an id does not block,
+ * interning a new token is serialized.</p>
+ */
+public class TokenDictionary {
+    private static final TokenDictionary SHARED = new TokenDictionary();
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] tokens = new String[1024];
+    private int size;
+
+    /**
+     * Returns the dictionary shared by all products of the current run.
+     *
+     * @return the shared token dictionary
+     */
+    public static TokenDictionary shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the id of the specified token, assigning a new id if the token has not been interned yet.
+     *
+     * @param token the lowercase token
+     * @return the id of the token
+     */
+    public int intern(String token) {
+        Integer id = ids.get(token);
+        if (id != null)
+            return id;
+
+        synchronized (this) {
+            return ids.computeIfAbsent(token, this::assignId);
+        }
+    }
+
+    /**
+     * Returns the id of the specified token without interning it.
+     *
+     * @param token the lowercase token
+     * @return the id of the token, or -1 if the token has not been interned
+     */
+    public int id(String token) {
+        Integer id = ids.get(token);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the token with the specified id.
+     *
+     * @param id the id of the token, as returned by {@link #intern(String)}
+     * @return the token
+     */
+    public String token(int id) {
+        return tokens[id];
+    }
+
+    /**
+     * Returns the number of interned tokens.
+     *
+     * @return the number of assigned token ids
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Stores a new token. The token is written before the id is published through the map of ids, and a grown array is published
+     * through the volatile field before that, so a reader holding an id always sees its token.
+     */
+    private int assignId(String token) {
+        if (size == tokens.length)
+            tokens = Arrays.copyOf(tokens, size * 2);
+        tokens[size] = token;
+        return size++;
+    }
+}
@@ -0,0 +1,238 @@
+package cz.cuni.mff.mbohin.productParser.snapshot;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NutritionalValues;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.ProductDetails;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A side store of {@link ProductDetails} offloaded from normalized products, so that descriptions, storage conditions and
+ * nutritional values do not stay on the heap while products are matched. The details are read back on demand, e.g. when
+ * a product is written into a snapshot.
+ *
+ * <p>A store is backed either by a spill file of the current run, to which details of parsed products are appended, or by
+ * the memory mapped {@link ProductSnapshot} the products were restored from, whose pages are only loaded by the operating
+ * system when details are read. In both cases the details are encoded by {@link #writeDetails(DataOutputStream, ProductDetails)}
+ * and prefixed by their length, so that the snapshot reader skips offloaded details without decoding them.</p>
+ */
+public class ProductDetailsStore implements ProductDetails.Source {
+    private static final Logger LOGGER = Logger.getLogger("ProductDetailsStore logger");
+    private static final String SPILL_FILE_NAME = "details.spill";
+    private static ProductDetailsStore spillStore;
+
+    private final ByteBuffer mappedBuffer;
+    private final FileChannel channel;
+    private long size;
+
+    private ProductDetailsStore(ByteBuffer mappedBuffer, FileChannel channel) {
+        this.mappedBuffer = mappedBuffer;
+        this.channel = channel;
+    }
+
+    /**
+     * Returns a read-only store over a memory mapped buffer containing encoded details, such as a snapshot.
+     *
+     * @param mappedBuffer the buffer, whose content must not change
+     * @return the store reading details at absolute positions of the buffer
+     */
+    public static ProductDetailsStore mapped(ByteBuffer mappedBuffer) {
+        return new ProductDetailsStore(mappedBuffer.asReadOnlyBuffer(), null);
+    }
+
+    /**
+     * Offloads the details of the specified products into the spill file of the current run, creating the file in
+     * {@link RuntimeConfig#productDetailsSpillDirectory} on first use. The spill file has a fixed name and is truncated when
+     * it is created, so a run that was killed before deleting it leaves at most one file behind, which the next run reuses.
+     * The file is closed and deleted when the run ends. Products whose
+     * details have already been offloaded are skipped. If the spill file can not be written, the details stay on the heap.
+     *
+     * @param products the products whose details are offloaded
+     * @throws UncheckedIOException if the spill file can not be created
+     */
+    public static void offload(List<NormalizedProduct> products) {
+        ProductDetailsStore store;
+        synchronized (ProductDetailsStore.class) {
+            if (spillStore == null)
+                spillStore = createSpillStore();
+            store = spillStore;
+        }
+        store.append(products);
+    }
+
+    @Override
+    public ProductDetails read(long offset) {
+        try {
+            if (mappedBuffer != null)
+                return readDetails(mappedBuffer.duplicate().position((int) offset));
+
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            readFully(length, offset);
+            ByteBuffer record = ByteBuffer.allocate(length.flip().getInt());
+            readFully(record, offset + Integer.BYTES);
+            return readDetails(record.flip());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read product details at offset " + offset, e);
+        }
+    }
+
+    /**
+     * Encodes product details. The encoding is self-delimiting, so it can be embedded in other records.
+     *
+     * @param out the stream the details are written to
+     * @param details the details to be written
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeDetails(DataOutputStream out, ProductDetails details) throws IOException {
+        ProductSnapshot.writeString(out, details.producer());
+        ProductSnapshot.writeString(out, details.description());
+        ProductSnapshot.writeString(out, details.storageConditions());
+        writeNutritionalValues(out, details.nutritionalValues());
+    }
+
+    /**
+     * Decodes product details written by {@link #writeDetails(DataOutputStream, ProductDetails)} at the position of the buffer
+     * and advances the position past them.
+     *
+     * @param buffer the buffer positioned at the encoded details
+     * @return the details
+     * @throws IOException if the encoded details are damaged
+     */
+    public static ProductDetails readDetails(ByteBuffer buffer) throws IOException {
+        String producer = ProductSnapshot.readString(buffer);
+        String description = ProductSnapshot.readString(buffer);
+        String storageConditions = ProductSnapshot.readString(buffer);
+        return new ProductDetails(producer, description, storageConditions, readNutritionalValues(buffer));
+    }
+
+    private static ProductDetailsStore createSpillStore() {
+        try {
+            Path directory = Paths.get(RuntimeConfig.productDetailsSpillDirectory);
+            Files.createDirectories(directory);
+            deleteStaleSpillFiles(directory);
+            Path file = directory.resolve(SPILL_FILE_NAME);
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> closeSpillFile(channel, file), "ProductDetailsStore cleanup"));
+            return new ProductDetailsStore(null, channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create product details spill file", e);
+        }
+    }
+
+    /**
+     * Deletes the uniquely named spill files that earlier versions created for every run and left behind when a run was killed.
+     */
+    private static void deleteStaleSpillFiles(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "details*.bin")) {
+            for (Path file : files) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to delete stale product details spill file " + file, e);
+                }
+            }
+        }
+    }
+
+    private static void closeSpillFile(FileChannel channel, Path file) {
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete product details spill file " + file, e);
+        }
+    }
+
+    /**
+     * Appends the details of the products in one write and hands the products their offsets.
+     */
+    private synchronized void append(List<NormalizedProduct> products) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long[] offsets = new long[products.size()];
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream recordOut = new DataOutputStream(record);
+            for (int i = 0; i < products.size(); i++) {
+                NormalizedProduct product = products.get(i);
+                offsets[i] = -1;
+                if (product.detailsOffloaded())
+                    continue;
+
+                record.reset();
+                writeDetails(recordOut, product.details());
+                offsets[i] = size + out.size();
+                out.writeInt(record.size());
+                record.writeTo(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode product details", e);
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            size = position;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to offload product details, keeping them on the heap", e);
+            return;
+        }
+
+        for (int i = 0; i < products.size(); i++) {
+            if (offsets[i] >= 0)
+                products.get(i).offloadDetails(this, offsets[i]);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException("Product details spill file ends at " + position);
+            position += read;
+        }
+    }
+
+    private static void writeNutritionalValues(DataOutputStream out, NutritionalValues values) throws IOException {
+        out.writeBoolean(values != null);
+        if (values == null)
+            return;
+
+        out.writeInt(values.getEnergetickaHodnotaKJ());
+        out.writeInt(values.getEnergetickaHodnotaKCAL());
+        ProductSnapshot.writeBigDecimal(out, values.getTuky());
+        ProductSnapshot.writeBigDecimal(out, values.getZTohoNasyceneMastneKyseliny());
+        ProductSnapshot.writeBigDecimal(out, values.getSacharidy());
+        ProductSnapshot.writeBigDecimal(out, values.getZTohoCukry());
+        ProductSnapshot.writeBigDecimal(out, values.getBilkoviny());
+        ProductSnapshot.writeBigDecimal(out, values.getSul());
+        ProductSnapshot.writeBigDecimal(out, values.getVlaknina());
+    }
+
+    private static NutritionalValues readNutritionalValues(ByteBuffer buffer) throws IOException {
+        if (buffer.get() == 0)
+            return null;
+
+        return new NutritionalValues(buffer.getInt(), buffer.getInt(), ProductSnapshot.readBigDecimal(buffer), ProductSnapshot.readBigDecimal(buffer),
+                ProductSnapshot.readBigDecimal(buffer), ProductSnapshot.readBigDecimal(buffer), ProductSnapshot.readBigDecimal(buffer),
+                ProductSnapshot.readBigDecimal(buffer), ProductSnapshot.readBigDecimal(buffer));
+    }
+}
@@ -0,0 +1,251 @@
+package cz.cuni.mff.mbohin.productParser.snapshot;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.ProductDetails;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.UnitType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores normalized products of one e-shop in a compact binary file, so that the next run can skip reading and parsing
+ * the JSON data source altogether. A snapshot is stamped with the {@link SourceFingerprint} of the data source it was created
+ * from and it is only used while the data source stays unchanged.
+ *
+ * <p>The snapshot holds every field of {@link NormalizedProduct}, including its {@link ProductDetails}, which are encoded by
+ * {@link ProductDetailsStore}. Data inferred from the product name is not stored, as it is derived from the name on first use.
+ * If {@link RuntimeConfig#offloadProductDetails} is enabled, the details of restored products are not decoded at all, the products
+ * read them from the mapped snapshot on demand. It is written through a temporary file and atomically moved in place, and it is read back
+ * through a memory mapped buffer. A missing, stale or damaged snapshot is reported as absent and the caller falls back to parsing.</p>
+ *
+ * <p>Layout: magic, format version, fingerprint, product count, followed by the products. Strings are stored as
+ * a length prefixed UTF-8 byte sequence, where the length -1 stands for null. The details of a product are prefixed by their
+ * length as well, so that offloaded details are skipped by position.</p>
+ */
+public class ProductSnapshot {
+    private static final Logger LOGGER = Logger.getLogger("ProductSnapshot logger");
+    private static final int MAGIC = 0x4E50534E; // "NPSN"
+    private static final int FORMAT_VERSION = 4;
+
+    /**
+     * Returns the path of the snapshot file of the specified e-shop.
+     *
+     * @param eshop the e-shop whose snapshot path is requested
+     * @return the path to the snapshot file
+     */
+    public static Path snapshotPath(Eshop eshop) {
+        return Paths.get(RuntimeConfig.snapshotDirectory, eshop + ".snapshot");
+    }
+
+    /**
+     * Loads normalized products of the specified e-shop from its snapshot, provided the snapshot was created from
+     * a data source with the given fingerprint.
+     *
+     * @param eshop the e-shop whose snapshot is loaded
+     * @param fingerprint the fingerprint of the current data source
+     * @return the restored list of normalized products, or null if there is no valid snapshot for the fingerprint
+     */
+    public static List<NormalizedProduct> load(Eshop eshop, SourceFingerprint fingerprint) {
+        return load(snapshotPath(eshop), eshop, fingerprint);
+    }
+
+    /**
+     * Loads normalized products of the specified e-shop from a snapshot at the given path, provided the snapshot is stamped
+     * with the given fingerprint.
+     *
+     * @param path the path of the snapshot file
+     * @param eshop the e-shop whose snapshot is loaded
+     * @param fingerprint the fingerprint the snapshot must be stamped with
+     * @return the restored list of normalized products, or null if there is no valid snapshot for the fingerprint
+     */
+    public static List<NormalizedProduct> load(Path path, Eshop eshop, SourceFingerprint fingerprint) {
+        if (!Files.isRegularFile(path))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                return null;
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+                return null;
+            if (!fingerprint.equals(readFingerprint(buffer)))
+                return null;
+
+            int count = checkLength(buffer.getInt(), buffer);
+            ProductDetailsStore detailsStore = RuntimeConfig.offloadProductDetails ? ProductDetailsStore.mapped(buffer) : null;
+            List<NormalizedProduct> products = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                products.add(readProduct(buffer, eshop, detailsStore));
+            }
+            return products;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable snapshot " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes normalized products of the specified e-shop into its snapshot, replacing any previous snapshot.
+     * Failures are logged and otherwise ignored, as the snapshot is only an optimization.
+     *
+     * @param eshop the e-shop whose products are written
+     * @param fingerprint the fingerprint of the data source the products were parsed from
+     * @param products the normalized products to be written
+     */
+    public static void save(Eshop eshop, SourceFingerprint fingerprint, List<NormalizedProduct> products) {
+        save(snapshotPath(eshop), eshop, fingerprint, products);
+    }
+
+    /**
+     * Writes normalized products of the specified e-shop into a snapshot at the given path, replacing any previous snapshot.
+     * Failures are logged and otherwise ignored.
+     *
+     * @param path the path of the snapshot file
+     * @param eshop the e-shop whose products are written
+     * @param fingerprint the fingerprint the snapshot is stamped with
+     * @param products the normalized products to be written
+     */
+    public static void save(Path path, Eshop eshop, SourceFingerprint fingerprint, List<NormalizedProduct> products) {
+        try {
+            Files.createDirectories(path.getParent());
+            Path temporary = Files.createTempFile(path.getParent(), eshop.toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeFingerprint(out, fingerprint);
+                out.writeInt(products.size());
+                ByteArrayOutputStream details = new ByteArrayOutputStream();
+                for (NormalizedProduct product : products) {
+                    writeProduct(out, product, details);
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write snapshot " + path, e);
+        }
+    }
+
+    private static void writeFingerprint(DataOutputStream out, SourceFingerprint fingerprint) throws IOException {
+        writeString(out, fingerprint.sourcePath());
+        out.writeLong(fingerprint.size());
+        out.writeLong(fingerprint.lastModifiedMillis());
+        out.writeLong(fingerprint.contentHash());
+    }
+
+    private static SourceFingerprint readFingerprint(ByteBuffer buffer) throws IOException {
+        return new SourceFingerprint(readString(buffer), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    private static void writeProduct(DataOutputStream out, NormalizedProduct product, ByteArrayOutputStream details) throws IOException {
+        writeString(out, product.name);
+        writeString(out, product.url);
+        writeBigDecimal(out, product.price);
+
+        out.writeByte(product.unitType == null ? -1 : product.unitType.ordinal());
+        out.writeBoolean(product.pieces != null);
+        if (product.pieces != null)
+            out.writeInt(product.pieces);
+        out.writeBoolean(product.weight != null);
+        if (product.weight != null)
+            out.writeDouble(product.weight);
+        out.writeBoolean(product.volume != null);
+        if (product.volume != null)
+            out.writeDouble(product.volume);
+
+        details.reset();
+        ProductDetailsStore.writeDetails(new DataOutputStream(details), product.details());
+        out.writeInt(details.size());
+        details.writeTo(out);
+    }
+
+    private static NormalizedProduct readProduct(ByteBuffer buffer, Eshop eshop, ProductDetailsStore detailsStore) throws IOException {
+        String name = readString(buffer);
+        String url = readString(buffer);
+        BigDecimal price = readBigDecimal(buffer);
+
+        byte unitType = buffer.get();
+        if (unitType < -1 || unitType >= UnitType.values().length)
+            throw new IOException("Invalid unit type " + unitType + " at position " + (buffer.position() - 1));
+        Integer pieces = buffer.get() != 0 ? buffer.getInt() : null;
+        Double weight = buffer.get() != 0 ? buffer.getDouble() : null;
+        Double volume = buffer.get() != 0 ? buffer.getDouble() : null;
+
+        NormalizedProduct product = new NormalizedProduct(name, url, price, eshop);
+        int detailsLength = checkLength(buffer.getInt(), buffer);
+        int detailsEnd = buffer.position() + detailsLength;
+        if (detailsStore != null) {
+            product.offloadDetails(detailsStore, buffer.position());
+        } else {
+            product.setDetails(ProductDetailsStore.readDetails(buffer.duplicate().limit(detailsEnd)));
+        }
+        buffer.position(detailsEnd);
+        product.unitType = unitType < 0 ? null : UnitType.values()[unitType];
+        product.pieces = pieces;
+        product.weight = weight;
+        product.volume = volume;
+        return product;
+    }
+
+    static void writeBigDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeInt(value.scale());
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+    }
+
+    static BigDecimal readBigDecimal(ByteBuffer buffer) throws IOException {
+        int scale = buffer.getInt();
+        byte[] unscaled = new byte[checkLength(buffer.getShort(), buffer)];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length == -1)
+            return null;
+        byte[] bytes = new byte[checkLength(length, buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks a length or count read from the buffer before anything is allocated for it, so that a damaged snapshot is
+     * reported as unreadable instead of failing with an arbitrary exception. Every counted item takes at least one byte.
+     */
+    private static int checkLength(int length, ByteBuffer buffer) throws IOException {
+        if (length < 0 || length > buffer.remaining())
+            throw new IOException("Invalid length " + length + " with " + buffer.remaining() + " bytes remaining at position " + buffer.position());
+        return length;
+    }
+}
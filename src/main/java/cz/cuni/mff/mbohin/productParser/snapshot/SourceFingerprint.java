@@ -0,0 +1,50 @@
+package cz.cuni.mff.mbohin.productParser.snapshot;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Identifies the exact content of a product data source. A snapshot of normalized products is valid only
+ * for the data source it was created from, which is checked by comparing fingerprints.
+ *
+ * @param sourcePath the normalized absolute path to the data source
+ * @param size the size of the data source in bytes
+ * @param lastModifiedMillis the last modification time of the data source in milliseconds since the epoch
+ * @param contentHash the CRC32C checksum of the whole content of the data source
+ */
+public record SourceFingerprint(String sourcePath, long size, long lastModifiedMillis, long contentHash) {
+    private static final long HASH_WINDOW = 1L << 30;
+
+    /**
+     * Computes the fingerprint of the specified data source. The content is hashed through memory mapped windows,
+     * which is considerably cheaper than parsing it.
+     *
+     * @param relativePath the relative path to the data source
+     * @return the fingerprint of the data source
+     * @throws IOException if the data source does not exist or cannot be read
+     */
+    public static SourceFingerprint of(String relativePath) throws IOException {
+        Path path = Paths.get(relativePath).toAbsolutePath().normalize();
+        if (!Files.isRegularFile(path))
+            throw new IOException("File not found: " + relativePath);
+
+        long size = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (long position = 0; position < size; position += HASH_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(HASH_WINDOW, size - position));
+                crc.update(window);
+            }
+        }
+
+        return new SourceFingerprint(path.toString(), size, lastModified, crc.getValue());
+    }
+}
@@ -0,0 +1,162 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer collecting the union of several postings lists of a {@link PostingsIndex}. For every collected id
+ * the buffer counts the shared tokens and sums their weights in counting arrays indexed by id, and the distinct ids are
+ * kept in a growing {@code int[]}. Once the buffer has reached its working size, collecting candidates of further products
+ * allocates nothing. A buffer is not thread-safe, each thread should use its own.
+ *
+ * <p>After collection, {@link #retainBest(int, double)} prunes the candidates to those with the highest token overlap weight,
+ * so that only promising candidates are passed on to the similarity calculators.</p>
+ */
+public class CandidateBuffer {
+    private int[] sharedTokens = new int[256];
+    private double[] overlapWeights = new double[256];
+    private int[] ids = new int[256];
+    private int size;
+    private final TopScoredIds bestCandidates = new TopScoredIds();
+
+    /**
+     * Empties the buffer, resetting only the counters touched since the last clearing.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            sharedTokens[ids[i]] = 0;
+            overlapWeights[ids[i]] = 0;
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds all ids of a postings list to the buffer, counting one more shared token for each of them and adding the token's weight
+     * to their overlap weight.
+     *
+     * @param postings the backing array of the postings list
+     * @param length the number of valid ids in the backing array
+     * @param weight the weight of the token the postings list belongs to
+     */
+    public void addAll(int[] postings, int length, double weight) {
+        if (length > 0)
+            ensureIdCapacity(postings[length - 1]);
+
+        for (int i = 0; i < length; i++) {
+            int id = postings[i];
+            if (sharedTokens[id]++ == 0) {
+                if (size == ids.length)
+                    ids = Arrays.copyOf(ids, size * 2);
+                ids[size++] = id;
+            }
+            overlapWeights[id] += weight;
+        }
+    }
+
+    /**
+     * Keeps only the candidates whose overlap weight reaches the minimum and out of them at most {@code topK} candidates
+     * with the highest overlap weight. The retained ids are sorted in increasing order.
+     *
+     * @param topK the maximum number of retained candidates, 0 or less for no limit
+     * @param minOverlapWeight the minimum overlap weight of a retained candidate
+     */
+    public void retainBest(int topK, double minOverlapWeight) {
+        int retained = 0;
+        if (topK <= 0 || topK >= size) {
+            for (int i = 0; i < size; i++) {
+                if (overlapWeights[ids[i]] >= minOverlapWeight)
+                    ids[retained++] = ids[i];
+                else
+                    reset(ids[i]);
+            }
+        } else {
+            bestCandidates.reset(topK);
+            for (int i = 0; i < size; i++) {
+                int id = ids[i];
+                if (overlapWeights[id] >= minOverlapWeight)
+                    bestCandidates.offer(id, overlapWeights[id]);
+            }
+            // selected counters are temporarily negated, so that every still positive counter belongs to a dropped candidate
+            for (int i = 0; i < bestCandidates.size(); i++)
+                sharedTokens[bestCandidates.id(i)] = -sharedTokens[bestCandidates.id(i)];
+            for (int i = 0; i < size; i++) {
+                if (sharedTokens[ids[i]] > 0)
+                    reset(ids[i]);
+            }
+            for (int i = 0; i < bestCandidates.size(); i++) {
+                int id = bestCandidates.id(i);
+                sharedTokens[id] = -sharedTokens[id];
+                ids[retained++] = id;
+            }
+        }
+        size = retained;
+        sort();
+    }
+
+    /**
+     * Sorts the collected ids in increasing order.
+     */
+    public void sort() {
+        Arrays.sort(ids, 0, size);
+    }
+
+    /**
+     * Returns the number of distinct ids collected.
+     *
+     * @return the number of collected ids
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the collected id at the specified position.
+     *
+     * @param index the position of the id
+     * @return the collected id
+     */
+    public int get(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Returns the number of tokens the specified collected id shares with the queried product.
+     *
+     * @param id the collected id
+     * @return the number of shared tokens
+     */
+    public int sharedTokens(int id) {
+        return sharedTokens[id];
+    }
+
+    /**
+     * Returns the sum of weights of tokens the specified collected id shares with the queried product.
+     *
+     * @param id the collected id
+     * @return the overlap weight
+     */
+    public double overlapWeight(int id) {
+        return overlapWeights[id];
+    }
+
+    /**
+     * Copies the collected ids into a new array of the exact size.
+     *
+     * @return the collected ids
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    private void reset(int id) {
+        sharedTokens[id] = 0;
+        overlapWeights[id] = 0;
+    }
+
+    private void ensureIdCapacity(int id) {
+        if (id >= sharedTokens.length) {
+            int capacity = Math.max(id + 1, sharedTokens.length * 2);
+            sharedTokens = Arrays.copyOf(sharedTokens, capacity);
+            overlapWeights = Arrays.copyOf(overlapWeights, capacity);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+/**
+ * The ways {@link EshopSubstrings} generates the candidates of a product, selected by
+ * {@link cz.cuni.mff.mbohin.config.RuntimeConfig#candidateGenerator}.
+ */
+public enum CandidateGenerator {
+    /**
+     * Products sharing a whitespace-split name substring, weighted by its inverse document frequency.
+     */
+    TOKENS,
+    /**
+     * Products sharing a character 3-gram of the name stripped of whitespace, weighted by its inverse document frequency,
+     * so that reordered words, typos and glued units such as "150g" and "150 g" still share most of their 3-grams.
+     * See {@link TrigramIndex}.
+     */
+    TRIGRAMS,
+    /**
+     * Products falling into a common bucket of a banded locality-sensitive hash of the MinHash signatures of their 3-gram sets,
+     * which makes products with a high Jaccard similarity of 3-grams candidates with high probability. See {@link MinHashIndex}.
+     */
+    MINHASH
+}
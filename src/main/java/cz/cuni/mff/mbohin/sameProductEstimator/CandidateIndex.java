@@ -0,0 +1,43 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+
+/**
+ * An alternative index of the products of one e-shop used by {@link EshopSubstrings} to generate candidates instead of its
+ * whitespace-split substrings, as selected by {@link CandidateGenerator}. Products are identified by the dense ids assigned by
+ * {@link EshopSubstrings} and must be added in increasing order of their ids.
+ */
+public interface CandidateIndex {
+    /**
+     * Indexes a product.
+     *
+     * @param id the dense id of the product, greater than the ids of all previously added products
+     * @param product the product
+     */
+    void add(int id, NormalizedProduct product);
+
+    /**
+     * Removes a previously indexed product.
+     *
+     * @param id the dense id of the product
+     * @param product the product
+     */
+    void remove(int id, NormalizedProduct product);
+
+    /**
+     * Collects the candidates of a product into the buffer. The buffer is cleared first and its ids are sorted in increasing
+     * order afterwards, the overlap weights of the candidates express how likely they match the product.
+     *
+     * @param product the product whose candidates are collected, typically from another e-shop
+     * @param buffer the reusable buffer receiving the candidate ids
+     * @param productCount the number of products currently indexed
+     */
+    void collectCandidates(NormalizedProduct product, CandidateBuffer buffer, int productCount);
+
+    /**
+     * Returns a one-line description of the size of the index for the console statistics.
+     *
+     * @return the description of the index
+     */
+    String describe();
+}
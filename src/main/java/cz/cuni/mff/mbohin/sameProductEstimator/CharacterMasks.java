@@ -0,0 +1,120 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed character masks of a pattern string of at most 64 characters, as used by the bit-parallel algorithms in
+ * {@link LevenshteinDistance} and {@link LCSFinder}. The mask of a character has the i-th bit set if the pattern contains
+ * the character at position i, so that a single {@code long} answers the comparison of the character with all pattern positions.
+ *
+ * <p>Masks of characters below 256 are kept in a directly indexed table, the few remaining characters of Czech product names
+ * (such as č, ř, š or ž) in a short list. Building the masks costs O(m) and they are cached per thread: comparing one product
+ * with thousands of candidates builds the masks of the product only once.</p>
+ */
+public class CharacterMasks {
+    /**
+     * The maximum length of a pattern, given by the number of bits of a {@code long}.
+     */
+    public static final int MAX_LENGTH = 64;
+
+    private static final ThreadLocal<CharacterMasks> CACHED = ThreadLocal.withInitial(CharacterMasks::new);
+    private static final ThreadLocal<CharacterMasks> SCRATCH = ThreadLocal.withInitial(CharacterMasks::new);
+
+    private final long[] directMasks = new long[256];
+    private char[] otherCharacters = new char[8];
+    private long[] otherMasks = new long[8];
+    private int otherCount;
+    private String pattern = "";
+
+    private CharacterMasks() { }
+
+    /**
+     * Returns the masks of the specified pattern from the cache of the current thread. The masks are rebuilt only when
+     * the pattern differs from the one cached last, typically the name of the product compared with many candidates.
+     * The returned instance is valid until the next call of this method on the same thread.
+     *
+     * @param pattern the pattern of at most {@link #MAX_LENGTH} characters
+     * @return the masks of the pattern
+     * @throws IllegalArgumentException if the pattern is too long
+     */
+    public static CharacterMasks cached(String pattern) {
+        return CACHED.get().use(pattern);
+    }
+
+    /**
+     * Returns the masks of the specified pattern built in a scratch instance of the current thread, leaving the cached
+     * masks untouched. Intended for patterns that are compared only once. The returned instance is valid until the next
+     * call of this method on the same thread.
+     *
+     * @param pattern the pattern of at most {@link #MAX_LENGTH} characters
+     * @return the masks of the pattern
+     * @throws IllegalArgumentException if the pattern is too long
+     */
+    public static CharacterMasks scratch(String pattern) {
+        return SCRATCH.get().use(pattern);
+    }
+
+    /**
+     * Returns the length of the pattern.
+     *
+     * @return the number of characters of the pattern
+     */
+    public int length() {
+        return pattern.length();
+    }
+
+    /**
+     * Returns the mask of the specified character.
+     *
+     * @param c the character
+     * @return the mask with bits set at the positions of the character within the pattern, 0 if the pattern does not contain it
+     */
+    public long mask(char c) {
+        if (c < 256)
+            return directMasks[c];
+        for (int i = 0; i < otherCount; i++) {
+            if (otherCharacters[i] == c)
+                return otherMasks[i];
+        }
+        return 0;
+    }
+
+    private CharacterMasks use(String newPattern) {
+        if (newPattern.length() > MAX_LENGTH)
+            throw new IllegalArgumentException("Pattern may have at most " + MAX_LENGTH + " characters, it has " + newPattern.length() + ".");
+        if (newPattern.equals(pattern))
+            return this;
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c < 256)
+                directMasks[c] = 0;
+        }
+        otherCount = 0;
+
+        for (int i = 0; i < newPattern.length(); i++) {
+            char c = newPattern.charAt(i);
+            if (c < 256)
+                directMasks[c] |= 1L << i;
+            else
+                addOtherMask(c, 1L << i);
+        }
+        pattern = newPattern;
+        return this;
+    }
+
+    private void addOtherMask(char c, long bit) {
+        for (int i = 0; i < otherCount; i++) {
+            if (otherCharacters[i] == c) {
+                otherMasks[i] |= bit;
+                return;
+            }
+        }
+        if (otherCount == otherCharacters.length) {
+            otherCharacters = Arrays.copyOf(otherCharacters, otherCount * 2);
+            otherMasks = Arrays.copyOf(otherMasks, otherCount * 2);
+        }
+        otherCharacters[otherCount] = c;
+        otherMasks[otherCount++] = bit;
+    }
+}
@@ -0,0 +1,78 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free disjoint-set forest over the elements {@code 0 .. size - 1}, allowing several threads to unite elements at once.
+ * The parent pointers are kept in an {@link AtomicIntegerArray}. A union links the root with the greater index below the root
+ * with the smaller index by a compare-and-set, retrying if another thread has linked either root meanwhile. {@link #find(int)}
+ * shortens the paths it walks by path halving, which is safe under concurrency since it only ever replaces a parent by one
+ * of its ancestors.
+ *
+ * <p>Linking by index instead of by rank keeps the operations lock-free and makes the root of every set its smallest element,
+ * regardless of the order of the unions. Path halving keeps the amortized cost of an operation logarithmic.</p>
+ */
+public class ConcurrentUnionFind {
+    private final AtomicIntegerArray parents;
+
+    /**
+     * Constructs a forest of singleton sets.
+     *
+     * @param size the number of elements
+     */
+    public ConcurrentUnionFind(int size) {
+        parents = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            parents.set(i, i);
+        }
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return parents.length();
+    }
+
+    /**
+     * Finds the root of the set containing an element, which is the smallest element of the set once all unions have completed.
+     *
+     * @param element the element
+     * @return the root of the element's set
+     */
+    public int find(int element) {
+        while (true) {
+            int parent = parents.get(element);
+            if (parent == element)
+                return element;
+
+            int grandparent = parents.get(parent);
+            if (grandparent != parent)
+                parents.compareAndSet(element, parent, grandparent);
+            element = parent;
+        }
+    }
+
+    /**
+     * Unites the sets containing two elements.
+     *
+     * @param a the first element
+     * @param b the second element
+     * @return true if the elements were in different sets, false if they already were in the same set
+     */
+    public boolean union(int a, int b) {
+        while (true) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB)
+                return false;
+
+            int smaller = Math.min(rootA, rootB);
+            int larger = Math.max(rootA, rootB);
+            if (parents.compareAndSet(larger, larger, smaller))
+                return true;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.sameProductEstimator.EshopSubstrings;
+import cz.cuni.mff.mbohin.sameProductEstimator.ProductFeatures;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Estimates the recall of the configured {@link cz.cuni.mff.mbohin.sameProductEstimator.CandidateGenerator}, i.e. how often the
+ * best match of a product is among its generated candidates at all. For an evenly spaced sample of products of the smaller
+ * e-shop, the best match is searched by the {@link CombinedScorer combined score} among <em>all</em> products of the larger
+ * e-shop. A product whose best match reaches {@link RuntimeConfig#minAssignmentScore} counts as matchable, and its match as
+ * recalled if the candidate generator lists it.
+ *
+ * <p>The exhaustive search costs O(sample size * larger e-shop size) comparisons by all measures, so the estimate is opt-in and
+ * the sample is kept small, see {@link RuntimeConfig#candidateRecallSampleSize}. The sample is searched in parallel.</p>
+ */
+public class CandidateRecall {
+    /**
+     * The result of a recall estimate.
+     *
+     * @param sampledProducts the number of sampled products
+     * @param matchableProducts the number of sampled products whose best match reaches the minimum assignment score
+     * @param recalledMatches the number of matchable products whose best match is among their candidates
+     */
+    public record Estimate(int sampledProducts, int matchableProducts, int recalledMatches) {
+        /**
+         * Returns the estimated recall.
+         *
+         * @return the share of matchable products whose best match is a candidate, 1 if no product is matchable
+         */
+        public double recall() {
+            return matchableProducts == 0 ? 1.0 : (double) recalledMatches / matchableProducts;
+        }
+    }
+
+    /**
+     * Estimates the recall of the candidate generator on a sample of the given products.
+     *
+     * @param products the products of the smaller e-shop
+     * @param sampleSize the maximum number of sampled products
+     * @param smallerEshop the e-shop with fewer products
+     * @param largerEshop the e-shop with more products
+     * @param calculators the similarity calculators, indexed as the measures of the scorer
+     * @param scorer the scorer combining the measures
+     * @return the estimate, null if the sample is empty
+     */
+    public static Estimate estimate(List<NormalizedProduct> products, int sampleSize, EshopSubstrings smallerEshop, EshopSubstrings largerEshop,
+                                    SimilarityCalculator[] calculators, CombinedScorer scorer) {
+        int sampled = Math.min(sampleSize, products.size());
+        if (sampled <= 0)
+            return null;
+
+        int[] outcomes = IntStream.range(0, sampled).parallel()
+                .map(i -> outcome(products.get((int) ((long) i * products.size() / sampled)), smallerEshop, largerEshop, calculators, scorer))
+                .toArray();
+        int matchable = (int) Arrays.stream(outcomes).filter(outcome -> outcome > 0).count();
+        int recalled = (int) Arrays.stream(outcomes).filter(outcome -> outcome == 2).count();
+        return new Estimate(sampled, matchable, recalled);
+    }
+
+    /**
+     * Searches the best match of one product exhaustively.
+     *
+     * @return 0 if the product is not matchable, 1 if its best match is not a candidate, 2 if it is
+     */
+    private static int outcome(NormalizedProduct product, EshopSubstrings smallerEshop, EshopSubstrings largerEshop,
+                               SimilarityCalculator[] calculators, CombinedScorer scorer) {
+        ProductFeatures features = smallerEshop.featuresOf(product);
+        double[] scores = new double[calculators.length];
+        int bestId = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int id = 0; id < largerEshop.idLimit(); id++) {
+            ProductFeatures candidate = largerEshop.featuresById(id);
+            if (candidate == null)
+                continue;
+
+            for (int metric = 0; metric < calculators.length; metric++) {
+                if (scorer.uses(metric))
+                    scores[metric] = calculators[metric].calculate(features, candidate);
+            }
+            double score = scorer.combine(scores);
+            if (score > bestScore) {
+                bestScore = score;
+                bestId = id;
+            }
+        }
+
+        if (bestId < 0 || bestScore < RuntimeConfig.minAssignmentScore)
+            return 0;
+        int[] candidateIds = ProductPairingManager.listEqualCandidates(features, largerEshop).candidateIds();
+        return Arrays.binarySearch(candidateIds, bestId) >= 0 ? 2 : 1;
+    }
+}
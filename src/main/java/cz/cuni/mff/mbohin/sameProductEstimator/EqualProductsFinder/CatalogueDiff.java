@@ -0,0 +1,98 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between two versions of one e-shop's catalogue. Products are identified by their URL:
+ * a URL present only in the new version is an added product, a URL present only in the previous version is a removed
+ * product. A product whose URL is present in both versions is renamed if its name changed, or repriced if only its price changed.
+ *
+ * <p>Renamed products require new similarity scores, while repriced products keep their scores, since none of the
+ * similarity measures depends on the price.</p>
+ *
+ * @param added the products present only in the new catalogue
+ * @param removed the products present only in the previous catalogue
+ * @param renamedPrevious the previous versions of renamed products
+ * @param renamedCurrent the new versions of renamed products, in the same order as {@code renamedPrevious}
+ * @param repricedPrevious the previous versions of products whose price changed but whose name stayed the same
+ * @param repricedCurrent the new versions of repriced products, in the same order as {@code repricedPrevious}
+ */
+public record CatalogueDiff(List<NormalizedProduct> added, List<NormalizedProduct> removed,
+                            List<NormalizedProduct> renamedPrevious, List<NormalizedProduct> renamedCurrent,
+                            List<NormalizedProduct> repricedPrevious, List<NormalizedProduct> repricedCurrent) {
+
+    /**
+     * Computes the difference between the previous and the current version of a catalogue.
+     *
+     * @param previous the products of the previous catalogue version
+     * @param current the products of the current catalogue version
+     * @return the difference between the two versions
+     */
+    public static CatalogueDiff between(List<NormalizedProduct> previous, List<NormalizedProduct> current) {
+        Map<String, NormalizedProduct> previousByUrl = new HashMap<>();
+        for (NormalizedProduct product : previous) {
+            previousByUrl.put(product.url, product);
+        }
+
+        List<NormalizedProduct> added = new ArrayList<>();
+        List<NormalizedProduct> renamedPrevious = new ArrayList<>(), renamedCurrent = new ArrayList<>();
+        List<NormalizedProduct> repricedPrevious = new ArrayList<>(), repricedCurrent = new ArrayList<>();
+
+        for (NormalizedProduct product : current) {
+            NormalizedProduct previousVersion = previousByUrl.remove(product.url);
+            if (previousVersion == null) {
+                added.add(product);
+            } else if (!previousVersion.name.equals(product.name)) {
+                renamedPrevious.add(previousVersion);
+                renamedCurrent.add(product);
+            } else if (previousVersion.price.compareTo(product.price) != 0) {
+                repricedPrevious.add(previousVersion);
+                repricedCurrent.add(product);
+            }
+        }
+
+        List<NormalizedProduct> removed = new ArrayList<>(previousByUrl.values());
+        return new CatalogueDiff(added, removed, renamedPrevious, renamedCurrent, repricedPrevious, repricedCurrent);
+    }
+
+    /**
+     * Determines whether the two catalogue versions are identical in URLs, names and prices.
+     *
+     * @return true if nothing changed, false otherwise
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && renamedCurrent.isEmpty() && repricedCurrent.isEmpty();
+    }
+
+    /**
+     * Returns all products whose name is new to the index, i.e. added products and new versions of renamed products.
+     *
+     * @return the products whose similarity scores must be computed
+     */
+    public List<NormalizedProduct> productsWithNewNames() {
+        List<NormalizedProduct> products = new ArrayList<>(added);
+        products.addAll(renamedCurrent);
+        return products;
+    }
+
+    /**
+     * Returns all products whose name disappears from the index, i.e. removed products and previous versions of renamed products.
+     *
+     * @return the products whose similarity scores are no longer valid
+     */
+    public List<NormalizedProduct> productsWithObsoleteNames() {
+        List<NormalizedProduct> products = new ArrayList<>(removed);
+        products.addAll(renamedPrevious);
+        return products;
+    }
+
+    @Override
+    public String toString() {
+        return "added " + added.size() + ", removed " + removed.size() + ", renamed " + renamedCurrent.size() + ", repriced " + repricedCurrent.size();
+    }
+}
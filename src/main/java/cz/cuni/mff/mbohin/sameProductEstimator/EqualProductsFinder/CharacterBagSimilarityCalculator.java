@@ -0,0 +1,61 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.sameProductEstimator.ProductFeatures;
+
+/**
+ * A {@link SimilarityCalculator} implementation that calculates the similarity between two products based on the characters
+ * their names have in common regardless of order. This class compares the sorted characters of names stripped of whitespaces and
+ * converted to lowercase, as precomputed in {@link ProductFeatures}, and normalizes the size of their multiset intersection
+ * by the minimum length of the two names.
+ *
+ * <p>The similarity is an upper bound of the longest common subsequence similarity and of the length-adjusted edit distance
+ * similarity, which are normalized the same way, and it costs only a linear merge. As an upper-bound filter it spares
+ * the calculation of these measures for candidates that could not be ranked by them anyway.</p>
+ */
+public class CharacterBagSimilarityCalculator extends SimilarityCalculator {
+    /**
+     * Calculates the similarity between two products based on the characters shared by their names. The names are compared
+     * without any whitespaces and converted to lowercase. Every character of one name is matched with at most one equal
+     * character of the other name and the number of matched characters is divided by the minimum length of the two names.
+     *
+     * @param product the first product for similarity comparison
+     * @param candidate the second product for similarity comparison
+     * @return the similarity ratio as a double, representing the number of shared characters divided by the shortest name length
+     */
+    @Override
+    public double calculate(ProductFeatures product, ProductFeatures candidate) {
+        int sharedCharacters = product.sharedCharacterCount(candidate);
+
+        return (double) sharedCharacters / Math.min(product.sortedCharacterCount(), candidate.sortedCharacterCount());
+    }
+
+    /**
+     * Returns the name of the similarity type.
+     *
+     * @return {@code "characterBagSimilarity"}
+     */
+    @Override
+    public String name() {
+        return "characterBagSimilarity";
+    }
+
+    /**
+     * Returns the relative cost of the calculation, a merge of the sorted characters of both names.
+     *
+     * @return 3
+     */
+    @Override
+    public int relativeCost() {
+        return 3;
+    }
+
+    /**
+     * Declares the calculator an upper-bound filter of the longest common subsequence and edit distance similarities.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isUpperBoundFilter() {
+        return true;
+    }
+}
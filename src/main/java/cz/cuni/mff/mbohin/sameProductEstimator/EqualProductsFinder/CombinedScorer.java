@@ -0,0 +1,94 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+
+import java.util.Arrays;
+
+/**
+ * Merges the scores of a candidate by the individual similarity measures into one match score. The score is the linear
+ * combination {@code bias + w_1 * s_1 + ... + w_n * s_n} of the measures' scores, optionally passed through the logistic
+ * function {@code 1 / (1 + e^-x)}. With weights summing to 1, no bias and no logistic function the score is a weighted average
+ * of the measures, with the logistic function it is the probability of a match predicted by a logistic regression model whose
+ * coefficients were learned on labelled product pairs.
+ *
+ * <p>The weights are given by {@link RuntimeConfig#combinedScoreWeights} as comma separated {@code similarityType=weight} entries,
+ * measures not listed there have weight 0 and are not calculated for the combined score.</p>
+ */
+public class CombinedScorer {
+    /**
+     * The name of the similarity type of the combined score, used for its rankings and output directory.
+     */
+    public static final String SIMILARITY_TYPE = "combinedScore";
+
+    private final double[] weights;
+    private final double bias;
+    private final boolean logistic;
+
+    /**
+     * Constructs a scorer of the measures with the given names, configured by {@link RuntimeConfig#combinedScoreWeights},
+     * {@link RuntimeConfig#combinedScoreBias} and {@link RuntimeConfig#logisticCombinedScore}.
+     *
+     * @param similarityTypes the names of the measures, indexed as in the {@link ScoreBuffer}
+     * @throws IllegalArgumentException if the weights are malformed or refer to an unknown similarity type
+     */
+    public CombinedScorer(String[] similarityTypes) {
+        this(similarityTypes, RuntimeConfig.combinedScoreWeights, RuntimeConfig.combinedScoreBias, RuntimeConfig.logisticCombinedScore);
+    }
+
+    /**
+     * Constructs a scorer of the measures with the given names and model parameters.
+     *
+     * @param similarityTypes the names of the measures, indexed as in the {@link ScoreBuffer}
+     * @param weightsDefinition comma separated {@code similarityType=weight} entries
+     * @param bias the constant term of the linear combination
+     * @param logistic true to pass the linear combination through the logistic function
+     * @throws IllegalArgumentException if the weights are malformed or refer to an unknown similarity type
+     */
+    public CombinedScorer(String[] similarityTypes, String weightsDefinition, double bias, boolean logistic) {
+        this.weights = new double[similarityTypes.length];
+        this.bias = bias;
+        this.logistic = logistic;
+
+        for (String entry : weightsDefinition.split(",")) {
+            if (entry.isBlank())
+                continue;
+            String[] nameAndWeight = entry.split("=");
+            if (nameAndWeight.length != 2)
+                throw new IllegalArgumentException("Combined score weight must be given as similarityType=weight, got: " + entry.strip());
+
+            int metric = Arrays.asList(similarityTypes).indexOf(nameAndWeight[0].strip());
+            if (metric < 0)
+                throw new IllegalArgumentException("Combined score weight refers to unknown similarity type " + nameAndWeight[0].strip() + ".");
+            try {
+                weights[metric] = Double.parseDouble(nameAndWeight[1].strip());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Combined score weight of " + nameAndWeight[0].strip() + " is not a number: " + nameAndWeight[1].strip(), e);
+            }
+        }
+    }
+
+    /**
+     * Determines whether the combined score depends on the specified measure.
+     *
+     * @param metric the index of the measure
+     * @return true if the measure has a non-zero weight
+     */
+    public boolean uses(int metric) {
+        return weights[metric] != 0;
+    }
+
+    /**
+     * Combines the scores of a candidate by all measures.
+     *
+     * @param scores the scores indexed by measure, scores of measures not {@linkplain #uses(int) used} are ignored
+     * @return the combined score
+     */
+    public double combine(double[] scores) {
+        double sum = bias;
+        for (int metric = 0; metric < weights.length; metric++) {
+            if (weights[metric] != 0)
+                sum += weights[metric] * scores[metric];
+        }
+        return logistic ? 1 / (1 + Math.exp(-sum)) : sum;
+    }
+}
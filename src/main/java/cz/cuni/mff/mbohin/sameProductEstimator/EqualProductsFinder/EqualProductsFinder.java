@@ -2,17 +2,22 @@ package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
 
 import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
 import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.TokenDictionary;
 import cz.cuni.mff.mbohin.config.RuntimeConfig;
 import cz.cuni.mff.mbohin.sameProductEstimator.*;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.function.BiFunction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The EqualProductsFinder class is responsible for identifying and sorting probable equal products
@@ -21,11 +26,20 @@ import java.util.Map;
  * to compare and match products across these e-shops.
  * It initializes by asserting that the provided lists of normalized products belong to their e-shops and
  * prepares the output directories for logging. The core functionalities are:
- * - Asynchronously processing and sorting probable equal products between the e-shops using multithreading.
+ * - Asynchronously processing and sorting probable equal products between the e-shops on a work-stealing
+ *   {@link ProductScoringEngine}, parallel across products as well as across e-shop pairs.
  * - Comparing products from smaller e-shops against larger e-shops to optimize the matching process.
  * - Logging the results of the similarity comparisons for further analysis.
- * The class also provides methods to clean up old log files, calculate various similarity metrics,
- * and ensure unique file paths for logging results.
+ * The class also provides methods to clean up old log files and calculate various similarity metrics.
+ * The rankings are written by a {@link ResultWriter} into one indexed {@link ResultsFile} per run, read by {@link ResultsReader}.
+ * Once the dictionaries of all e-shops are built, the {@link StopSubstrings} stop-list is learned from all of them at once and applied to each.
+ * The assignment candidates of every scored product are kept in a {@link RankingStore}, so that when the catalogue of one e-shop changes,
+ * {@link #updateCatalogue(Eshop, List)} re-indexes and re-scores only the products affected by the change.
+ * The catalogues the rankings were computed from are kept as {@link MatchedCatalogues} next to the results file, so that
+ * {@link #sortProbableEqualProductsIncrementally(List, List, List)} can restore the previous run and re-match only what changed since.
+ * From the rankings by the combined score, a {@link OneToOneAssignment} of the products of every e-shop pair is derived,
+ * deciding which product of the larger e-shop is the same product as a product of the smaller one. The assignments of all
+ * three pairs are reconciled into global {@link ProductClusters}, listed in one cluster table for price comparison.
  * Example usage:
  * <pre>
  * {@code
@@ -34,6 +48,9 @@ import java.util.Map;
  * List<NormalizedProduct> tescoProducts = ...;
  * EqualProductsFinder finder = new EqualProductsFinder(kosikProducts, rohlikProducts, tescoProducts);
  * finder.sortProbableEqualProductsAsync();
+ *
+ * List<NormalizedProduct> updatedTescoProducts = ...;
+ * finder.updateCatalogue(Eshop.TESCO, updatedTescoProducts);
  * }
  * </pre>
  *
@@ -41,16 +58,34 @@ import java.util.Map;
  * @see NormalizedProduct
  * @see Eshop
  * @see EshopSubstrings
- * @see ProductHashSetCandidatesPair
+ * @see StopSubstrings
+ * @see ProductCandidatesPair
  * @see SimilarityCandidatePair
  * @see LCSFinder
  * @see LevenshteinDistance
+ * @see CatalogueDiff
+ * @see MatchedCatalogues
+ * @see RankingStore
+ * @see ProductScoringEngine
+ * @see OneToOneAssignment
+ * @see ProductClusters
  */
 @SuppressWarnings("unused")
 public class EqualProductsFinder {
-    private final List<NormalizedProduct> kosikProducts;
-    private final List<NormalizedProduct> rohlikProducts;
-    private final List<NormalizedProduct> tescoProducts;
+    private static final Eshop[][] ESHOP_PAIRS = {
+            {Eshop.KOSIK, Eshop.ROHLIK},
+            {Eshop.KOSIK, Eshop.TESCO},
+            {Eshop.ROHLIK, Eshop.TESCO}
+    };
+
+    private final Map<Eshop, List<NormalizedProduct>> catalogues = new EnumMap<>(Eshop.class);
+    private final Map<Eshop, EshopSubstrings> dictionaries = new EnumMap<>(Eshop.class);
+    private Set<String> stopSubstrings = Set.of();
+    private final RankingStore rankingStore = new RankingStore();
+    private final ProductScoringEngine scoringEngine = new ProductScoringEngine(rankingStore);
+    private final Map<String, List<OneToOneAssignment.Match>> assignments = new ConcurrentHashMap<>();
+    private volatile ProductClusters clusters;
+
     /**
      * Constructs an EqualProductsFinder instance with lists of normalized products from Kosik, Rohlik, and Tesco e-shops.
      * This constructor ensures that all products in each list belong to their respective e-shops and prepares the output
@@ -62,16 +97,88 @@ public class EqualProductsFinder {
      * @throws IllegalArgumentException if any product in the provided lists does not belong to its specified e-shop
      */
     public EqualProductsFinder(List<NormalizedProduct> kosikProducts, List<NormalizedProduct> rohlikProducts, List<NormalizedProduct> tescoProducts) {
-        assertAllProductsAreFromSameEshop(kosikProducts, Eshop.KOSIK);
-        assertAllProductsAreFromSameEshop(rohlikProducts, Eshop.ROHLIK);
-        assertAllProductsAreFromSameEshop(tescoProducts, Eshop.TESCO);
+        this(Map.of(Eshop.KOSIK, kosikProducts, Eshop.ROHLIK, rohlikProducts, Eshop.TESCO, tescoProducts));
+        LoggingManager.prepareStateOfOutputDirectories(kosikProducts, rohlikProducts, tescoProducts);
+    }
 
-        this.kosikProducts = kosikProducts;
-        this.rohlikProducts = rohlikProducts;
-        this.tescoProducts = tescoProducts;
+    private EqualProductsFinder(Map<Eshop, List<NormalizedProduct>> products) {
+        for (Map.Entry<Eshop, List<NormalizedProduct>> entry : products.entrySet()) {
+            assertAllProductsAreFromSameEshop(entry.getValue(), entry.getKey());
+            catalogues.put(entry.getKey(), entry.getValue());
+        }
         System.out.println("Normalized products have been loaded to same product estimator.\n");
+    }
 
-        LoggingManager.prepareStateOfOutputDirectories(kosikProducts, rohlikProducts, tescoProducts);
+    /**
+     * Sorts probable equal products of the current catalogues, reusing the results of the previous run where possible.
+     * If {@link RuntimeConfig#incrementalMatching} is enabled and the {@link MatchedCatalogues} of the previous run are stored
+     * together with its complete results file, the rankings of the previous run are restored from the results file and every
+     * changed catalogue is applied by {@link #updateCatalogue(Eshop, List)}, so only the products affected by the changes are scored.
+     * Otherwise all catalogues are matched from scratch by {@link #sortProbableEqualProductsAsync()}. In either case, the current
+     * catalogues are stored as the matched catalogues of the new results file afterwards.
+     *
+     * <p>The restored rankings were computed with the settings of the previous run. After changing a setting that affects
+     * the rankings, the catalogues should be matched from scratch by disabling {@link RuntimeConfig#incrementalMatching} once.</p>
+     *
+     * @param kosikProducts the current list of normalized products from Kosik e-shop
+     * @param rohlikProducts the current list of normalized products from Rohlik e-shop
+     * @param tescoProducts the current list of normalized products from Tesco e-shop
+     * @return the finder holding the rankings, assignments and clusters of the current catalogues
+     * @throws IllegalArgumentException if any product in the provided lists does not belong to its specified e-shop or a list is empty
+     * @throws InterruptedException if the thread execution is interrupted while waiting for completion
+     */
+    public static EqualProductsFinder sortProbableEqualProductsIncrementally(List<NormalizedProduct> kosikProducts, List<NormalizedProduct> rohlikProducts,
+                                                                              List<NormalizedProduct> tescoProducts) throws InterruptedException {
+        EqualProductsFinder finder = RuntimeConfig.incrementalMatching ? restorePreviousRun() : null;
+        if (finder == null) {
+            finder = new EqualProductsFinder(kosikProducts, rohlikProducts, tescoProducts);
+            finder.sortProbableEqualProductsAsync();
+        } else {
+            finder.updateCatalogue(Eshop.KOSIK, kosikProducts);
+            finder.updateCatalogue(Eshop.ROHLIK, rohlikProducts);
+            finder.updateCatalogue(Eshop.TESCO, tescoProducts);
+            LoggingManager.flushSortedCandidates();
+        }
+
+        if (!RuntimeConfig.incrementalMatching || LoggingManager.sortedCandidatesFailed())
+            MatchedCatalogues.delete();
+        else
+            MatchedCatalogues.save(finder.catalogues, LoggingManager.resultsFile());
+        return finder;
+    }
+
+    /**
+     * Restores the state of the previous run from its matched catalogues and results file: the dictionaries, rankings,
+     * one-to-one assignments and clusters. The results file is continued rather than replaced.
+     *
+     * @return the restored finder, or null if the previous run can not be restored
+     */
+    private static EqualProductsFinder restorePreviousRun() throws InterruptedException {
+        Path resultsFile = LoggingManager.resultsFile();
+        Map<Eshop, List<NormalizedProduct>> previousCatalogues = MatchedCatalogues.load(resultsFile);
+        if (previousCatalogues == null)
+            return null;
+
+        EqualProductsFinder finder = new EqualProductsFinder(previousCatalogues);
+        try {
+            if (!finder.rankingStore.restore(ResultsFile.open(resultsFile), previousCatalogues)) {
+                System.out.println("Results of the previous run do not match its catalogues, matching all catalogues from scratch.\n");
+                return null;
+            }
+        } catch (IOException e) {
+            System.out.println("Results of the previous run can not be read (" + e.getMessage() + "), matching all catalogues from scratch.\n");
+            return null;
+        }
+
+        LoggingManager.resumeStateOfOutputDirectories();
+        finder.buildDictionaries(false);
+        for (Eshop[] pair : ESHOP_PAIRS) {
+            String eshopPair = finder.pairName(pair[0], pair[1]);
+            finder.assignProducts(eshopPair, eshopPair);
+        }
+        finder.clusterProducts();
+        System.out.println("Restored the results of the previous run from " + resultsFile + ".\n");
+        return finder;
     }
 
     /**
@@ -90,26 +197,279 @@ public class EqualProductsFinder {
 
     /**
      * Asynchronously processes and sorts probable equal products between multiple e-shops using multithreading.
-     * This method initializes dictionaries for each e-shop and utilizes a fixed thread pool to concurrently execute the sorting of probable
-     * equal products between Kosik, Rohlik, and Tesco e-shops. Each pair of e-shops is processed in a separate thread to enhance performance.
-     * The method ensures that all threads complete their execution before returning. It uses a thread pool of size three to match the three tasks,
-     * ensuring that each task can run concurrently without waiting for thread availability.
+     * This method initializes dictionaries for each e-shop, applies the stop-list learned from all of them, and submits the sorting of probable equal products between Kosik, Rohlik,
+     * and Tesco e-shops as three tasks to the work-stealing pool of the {@link ProductScoringEngine}. The products of every pair are
+     * scored in parallel chunks, so all cores are used regardless of the number of e-shop pairs.
+     * The method ensures that all tasks complete their execution and all rankings are written before returning, then clusters the matched products of all pairs.
      *
      * @throws InterruptedException if the thread execution is interrupted while waiting for completion
      */
     public void sortProbableEqualProductsAsync() throws InterruptedException {
-        EshopSubstrings kosikDict = new EshopSubstrings(kosikProducts);
-        EshopSubstrings rohlikDict = new EshopSubstrings(rohlikProducts);
-        EshopSubstrings tescoDict = new EshopSubstrings(tescoProducts);
+        buildDictionaries(true);
+
+        List<Runnable> pairTasks = new ArrayList<>();
+        for (Eshop[] pair : ESHOP_PAIRS) {
+            pairTasks.add(() -> generateMostProbableEqualProducts(dictionaries.get(pair[0]), dictionaries.get(pair[1])));
+        }
+        runOnScoringPool(pairTasks);
+        LoggingManager.flushSortedCandidates();
+        clusterProducts();
+    }
+
+    /**
+     * Builds the dictionaries of all e-shops, then learns the stop-list from all of them and applies it to each.
+     *
+     * @param logDictionaries true to log the statistics and the substrings mapping view of every dictionary
+     */
+    private void buildDictionaries(boolean logDictionaries) {
+        dictionaries.put(Eshop.KOSIK, new EshopSubstrings(catalogues.get(Eshop.KOSIK)));
+        dictionaries.put(Eshop.ROHLIK, new EshopSubstrings(catalogues.get(Eshop.ROHLIK)));
+        dictionaries.put(Eshop.TESCO, new EshopSubstrings(catalogues.get(Eshop.TESCO)));
+        stopSubstrings = StopSubstrings.learn(dictionaries.values());
+        for (EshopSubstrings dictionary : dictionaries.values()) {
+            dictionary.applyStopSubstrings(stopSubstrings);
+            if (logDictionaries)
+                dictionary.logDictionary();
+        }
+    }
 
-        try (ExecutorService executor = Executors.newFixedThreadPool(3)) {
-            executor.submit(() -> generateMostProbableEqualProducts(kosikDict, rohlikDict));
-            executor.submit(() -> generateMostProbableEqualProducts(kosikDict, tescoDict));
-            executor.submit(() -> generateMostProbableEqualProducts(rohlikDict, tescoDict));
+    /**
+     * Returns the clusters of the same products across all e-shops computed after the last scoring or catalogue update.
+     *
+     * @return the product clusters, null before {@link #sortProbableEqualProductsAsync()}
+     */
+    public ProductClusters clusters() {
+        return clusters;
+    }
 
-            executor.shutdown();
-            boolean terminated = executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    private void clusterProducts() {
+        ProductClusters productClusters = ProductClusters.build(assignments);
+        clusters = productClusters;
+        LoggingManager.logClusters(productClusters);
+        System.out.println("Clustered matched products into " + productClusters.clusters().size() + " clusters, "
+                + productClusters.count(ProductClusters.Consistency.OPEN_TRIANGLE) + " with an open triangle and "
+                + productClusters.count(ProductClusters.Consistency.CONFLICT) + " with conflicting matches.");
+    }
+
+    private static void runOnScoringPool(List<Runnable> tasks) throws InterruptedException {
+        List<ForkJoinTask<?>> submitted = new ArrayList<>();
+        for (Runnable task : tasks) {
+            submitted.add(ProductScoringEngine.pool().submit(task));
+        }
+        for (ForkJoinTask<?> task : submitted) {
+            task.join();
         }
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    /**
+     * Applies a new version of one e-shop's catalogue and updates the results incrementally. The new catalogue is compared with
+     * the current one by product URLs (see {@link CatalogueDiff}). Only added, removed, renamed and repriced products are re-indexed
+     * in the e-shop's {@link EshopSubstrings}, and only the following products are scored again:
+     * <ul>
+     * <li>added and renamed products, if the changed e-shop is the smaller one of an e-shop pair,</li>
+     * <li>already scored products sharing a substring with an added, removed or renamed product, if the changed e-shop is the larger one.</li>
+     * </ul>
+     * Rankings of all other products are reused from the {@link RankingStore}, the e-shop pair not involving the changed e-shop is not touched.
+     * Afterwards the {@link StopSubstrings} stop-list is learned again from all e-shops. If a substring enters or leaves it,
+     * the scored products containing the substring are scored again in every e-shop pair, as their candidates may change.
+     * Rankings of rescored products are appended to the results file, whose index then refers to their latest rankings.
+     * The one-to-one assignments of the updated pairs and the product clusters are recomputed.
+     * Should the change swap the smaller and the larger e-shop of a pair, that pair is scored again from scratch.
+     *
+     * @param eshop the e-shop whose catalogue has changed
+     * @param currentProducts the complete new version of the catalogue of the e-shop
+     * @return the difference between the previous and the new version of the catalogue
+     * @throws IllegalStateException if called before {@link #sortProbableEqualProductsAsync()}
+     * @throws IllegalArgumentException if the catalogue is empty or some product does not belong to the e-shop
+     * @throws InterruptedException if the thread execution is interrupted while waiting for completion
+     */
+    public CatalogueDiff updateCatalogue(Eshop eshop, List<NormalizedProduct> currentProducts) throws InterruptedException {
+        if (dictionaries.isEmpty())
+            throw new IllegalStateException("Catalogue may be updated only after the probable equal products have been sorted.");
+        if (currentProducts.isEmpty())
+            throw new IllegalArgumentException("Catalogue of eshop " + eshop + " is empty, products of an empty eshop can not be matched.");
+        assertAllProductsAreFromSameEshop(currentProducts, eshop);
+
+        CatalogueDiff diff = CatalogueDiff.between(catalogues.get(eshop), currentProducts);
+        System.out.println("Catalogue of eshop " + eshop + " has changed: " + diff + "\n");
+        if (diff.isEmpty())
+            return diff;
+
+        Map<Eshop, String> previousPairNames = new EnumMap<>(Eshop.class);
+        for (Eshop[] pair : ESHOP_PAIRS) {
+            if (pair[0] == eshop || pair[1] == eshop)
+                previousPairNames.put(pair[0] == eshop ? pair[1] : pair[0], pairName(pair[0], pair[1]));
+        }
+
+        List<NormalizedProduct> reindexedPrevious = new ArrayList<>(diff.productsWithObsoleteNames());
+        reindexedPrevious.addAll(diff.repricedPrevious());
+        List<NormalizedProduct> reindexedCurrent = new ArrayList<>(diff.productsWithNewNames());
+        reindexedCurrent.addAll(diff.repricedCurrent());
+
+        EshopSubstrings dictionary = dictionaries.get(eshop);
+        dictionary.removeProducts(reindexedPrevious);
+        dictionary.addProducts(reindexedCurrent);
+        catalogues.put(eshop, currentProducts);
+        Set<Integer> stopSubstringChanges = relearnStopSubstrings();
+
+        List<Runnable> pairTasks = new ArrayList<>();
+        for (Map.Entry<Eshop, String> entry : previousPairNames.entrySet()) {
+            pairTasks.add(() -> updateEshopPair(dictionary, dictionaries.get(entry.getKey()), entry.getValue(), diff));
+        }
+        runOnScoringPool(pairTasks);
+        if (!stopSubstringChanges.isEmpty())
+            rescoreStopSubstringChanges(stopSubstringChanges);
+        LoggingManager.flushSortedCandidates();
+        clusterProducts();
+
+        return diff;
+    }
+
+    /**
+     * Learns the stop-list again from the current dictionaries of all e-shops and applies it to each of them.
+     *
+     * @return the ids of the substrings which entered or left the stop-list
+     */
+    private Set<Integer> relearnStopSubstrings() {
+        Set<String> previousStopSubstrings = stopSubstrings;
+        stopSubstrings = StopSubstrings.learn(dictionaries.values());
+        for (EshopSubstrings dictionary : dictionaries.values()) {
+            dictionary.applyStopSubstrings(stopSubstrings);
+        }
+
+        Set<String> changed = new HashSet<>(stopSubstrings);
+        changed.addAll(previousStopSubstrings);
+        changed.removeIf(substring -> stopSubstrings.contains(substring) && previousStopSubstrings.contains(substring));
+        Set<Integer> tokenIds = new HashSet<>();
+        for (String substring : changed) {
+            int tokenId = TokenDictionary.shared().id(substring);
+            if (tokenId >= 0)
+                tokenIds.add(tokenId);
+        }
+        return tokenIds;
+    }
+
+    /**
+     * Scores again the scored products of every e-shop pair containing any of the substrings whose stop-list entry has changed.
+     * Candidates are collected only through the substrings of the scored product, so no other product is affected.
+     */
+    private void rescoreStopSubstringChanges(Set<Integer> tokenIds) throws InterruptedException {
+        List<Runnable> pairTasks = new ArrayList<>();
+        for (Eshop[] pair : ESHOP_PAIRS) {
+            pairTasks.add(() -> {
+                EshopSubstrings eshopA = dictionaries.get(pair[0]), eshopB = dictionaries.get(pair[1]);
+                EshopSubstrings smallerEshop = ProductPairingManager.smallerOf(eshopA, eshopB);
+                EshopSubstrings largerEshop = smallerEshop == eshopA ? eshopB : eshopA;
+                String eshopPair = ProductPairingManager.eshopPairName(smallerEshop, largerEshop);
+
+                Set<NormalizedProduct> productsToScore = scoredProductsContaining(eshopPair, smallerEshop, tokenIds);
+                if (productsToScore.isEmpty())
+                    return;
+                for (NormalizedProduct product : productsToScore)
+                    rankingStore.discard(eshopPair, product.url);
+                scoringEngine.scoreProducts(new ArrayList<>(productsToScore), productsToScore.size(), smallerEshop, largerEshop, false);
+                System.out.println("Rescored " + productsToScore.size() + " products of " + eshopPair + " after stop-list change.");
+                assignProducts(eshopPair, eshopPair);
+            });
+        }
+        runOnScoringPool(pairTasks);
+    }
+
+    private Set<NormalizedProduct> scoredProductsContaining(String eshopPair, EshopSubstrings smallerEshop, Set<Integer> tokenIds) {
+        Set<NormalizedProduct> products = new LinkedHashSet<>();
+        for (int tokenId : tokenIds) {
+            for (NormalizedProduct product : smallerEshop.productsContaining(tokenId)) {
+                if (rankingStore.contains(eshopPair, product.url))
+                    products.add(product);
+            }
+        }
+        return products;
+    }
+
+    private String pairName(Eshop a, Eshop b) {
+        EshopSubstrings eshopA = dictionaries.get(a), eshopB = dictionaries.get(b);
+        return ProductPairingManager.smallerOf(eshopA, eshopB) == eshopA
+                ? ProductPairingManager.eshopPairName(eshopA, eshopB)
+                : ProductPairingManager.eshopPairName(eshopB, eshopA);
+    }
+
+    /**
+     * Brings the rankings of one e-shop pair up to date after the catalogue of one of its e-shops has changed.
+     *
+     * @param changedEshop the dictionary of the e-shop whose catalogue has changed, already updated
+     * @param otherEshop the dictionary of the other e-shop of the pair
+     * @param previousPairName the name of the e-shop pair before the change
+     * @param diff the difference between the previous and the new catalogue of the changed e-shop
+     */
+    private void updateEshopPair(EshopSubstrings changedEshop, EshopSubstrings otherEshop, String previousPairName, CatalogueDiff diff) {
+        EshopSubstrings smallerEshop = ProductPairingManager.smallerOf(changedEshop, otherEshop);
+        EshopSubstrings largerEshop = smallerEshop == changedEshop ? otherEshop : changedEshop;
+        String eshopPair = ProductPairingManager.eshopPairName(smallerEshop, largerEshop);
+
+        if (!eshopPair.equals(previousPairName)) {
+            rankingStore.discardPair(previousPairName);
+            generateMostProbableEqualProducts(smallerEshop, largerEshop);
+            return;
+        }
+
+        Map<NormalizedProduct, NormalizedProduct> repriced = new HashMap<>();
+        for (int i = 0; i < diff.repricedPrevious().size(); i++)
+            repriced.put(diff.repricedPrevious().get(i), diff.repricedCurrent().get(i));
+        rankingStore.replaceProducts(eshopPair, repriced);
+
+        Set<NormalizedProduct> productsToScore = new LinkedHashSet<>();
+        if (smallerEshop == changedEshop) {
+            for (NormalizedProduct product : diff.productsWithObsoleteNames())
+                rankingStore.discard(eshopPair, product.url);
+            productsToScore.addAll(diff.productsWithNewNames());
+        } else {
+            productsToScore.addAll(scoredProductsContaining(eshopPair, smallerEshop, changedTokenIds(diff)));
+            for (NormalizedProduct product : productsToScore)
+                rankingStore.discard(eshopPair, product.url);
+        }
+
+        scoringEngine.scoreProducts(new ArrayList<>(productsToScore), productsToScore.size(), smallerEshop, largerEshop, false);
+        System.out.println("Rescored " + productsToScore.size() + " products of " + eshopPair + " after catalogue update.");
+        assignProducts(eshopPair, previousPairName);
+    }
+
+    /**
+     * Returns the one-to-one assignment of the products of an e-shop pair computed by the last scoring or update of the pair.
+     *
+     * @param eshopPair the name of the e-shop pair, formatted as "smallerEshop_to_largerEshop"
+     * @return the matched pairs sorted by combined score in descending order, empty if the pair has not been scored
+     */
+    public List<OneToOneAssignment.Match> assignmentOf(String eshopPair) {
+        return assignments.getOrDefault(eshopPair, List.of());
+    }
+
+    /**
+     * Assigns the products of an e-shop pair one-to-one based on their stored assignment candidates and logs the assignment.
+     *
+     * @param eshopPair the name of the e-shop pair
+     * @param previousPairName the name the e-shop pair had before a catalogue update, whose assignment is dropped
+     */
+    private void assignProducts(String eshopPair, String previousPairName) {
+        assignments.remove(previousPairName);
+        List<OneToOneAssignment.Match> matches = OneToOneAssignment.assign(rankingStore.candidatesOf(eshopPair),
+                RuntimeConfig.assignmentCandidatesPerProduct, RuntimeConfig.minAssignmentScore);
+        assignments.put(eshopPair, matches);
+        LoggingManager.logAssignment(eshopPair, matches);
+        System.out.println(eshopPair + ": assigned " + matches.size() + " one-to-one matches.");
+    }
+
+    private static Set<Integer> changedTokenIds(CatalogueDiff diff) {
+        Set<Integer> tokenIds = new HashSet<>();
+        List<NormalizedProduct> changedProducts = new ArrayList<>(diff.productsWithNewNames());
+        changedProducts.addAll(diff.productsWithObsoleteNames());
+        for (NormalizedProduct product : changedProducts) {
+            for (int tokenId : product.inferredData.getTokenIds()) {
+                tokenIds.add(tokenId);
+            }
+        }
+        return tokenIds;
     }
 
     /**
@@ -120,44 +480,21 @@ public class EqualProductsFinder {
      * c. Longest common subsequence.
      * d. Edit distance of product names.
      * This method aims to optimize product matching across e-shops by focusing on the smaller inventory to reduce computational demand and enhance accuracy.
+     * Afterwards, the products of the pair are assigned one-to-one by their combined score.
+     * Every product of the smaller e-shop is scored if {@link RuntimeConfig#fullCatalogueScoring} is enabled, otherwise only the first
+     * {@link RuntimeConfig#limitProcessedProducts} products are.
      *
      * @param eshopA the first e-shop to compare
      * @param eshopB the second e-shop to compare
      */
-    private static void generateMostProbableEqualProducts(EshopSubstrings eshopA, EshopSubstrings eshopB) {
-        EshopSubstrings smallerEshop = eshopA.products.size() < eshopB.products.size() ? eshopA : eshopB;
-        EshopSubstrings largerEshop = eshopA.products.size() >= eshopB.products.size() ? eshopA : eshopB;
-        List<ProductHashSetCandidatesPair> equalCandidatesOfProducts = ProductPairingManager.findEqualCandidatesOfProducts(smallerEshop, largerEshop);
-
-        for (Map.Entry<String, SimilarityCalculator> entry : SimilarityCalculatorsFactory.getSimilarityCalculators().entrySet()) {
-            for (int i = 0; i < Math.min(RuntimeConfig.limitProcessedProducts, equalCandidatesOfProducts.size()); i++) {
-                ProductHashSetCandidatesPair productAndCandidates = equalCandidatesOfProducts.get(i);
-                NormalizedProduct product = productAndCandidates.product();
-                HashSet<NormalizedProduct> candidates = productAndCandidates.candidates();
-
-                List<SimilarityCandidatePair> sortedCandidates = sortCandidates(product, candidates, entry.getValue()::calculate);
-                LoggingManager.logSortedCandidates(entry.getKey(), product, largerEshop, sortedCandidates);
-            }
-        }
-    }
+    private void generateMostProbableEqualProducts(EshopSubstrings eshopA, EshopSubstrings eshopB) {
+        EshopSubstrings smallerEshop = ProductPairingManager.smallerOf(eshopA, eshopB);
+        EshopSubstrings largerEshop = smallerEshop == eshopA ? eshopB : eshopA;
+        int scoreLimit = RuntimeConfig.fullCatalogueScoring ? smallerEshop.products.size() : RuntimeConfig.limitProcessedProducts;
 
-    /**
-     * Sorts a set of candidate products based on their similarity to a given product. The similarity is calculated using a specified
-     * function that compares the product and each candidate. The method returns a list of candidates paired with their similarity scores,
-     * sorted in descending order of similarity.
-     *
-     * @param product the reference product from which similarity is measured
-     * @param candidates a set of candidate products to be compared with the reference product
-     * @param calculateSimilarity a function that computes the similarity between two products, returning a double value
-     * @return a list of SimilarityCandidatePair objects, each containing a candidate and its similarity score, sorted by similarity in descending order
-     */
-    private static List<SimilarityCandidatePair> sortCandidates(NormalizedProduct product, HashSet<NormalizedProduct> candidates, BiFunction<NormalizedProduct, NormalizedProduct, Double> calculateSimilarity) {
-        List<SimilarityCandidatePair> sortedCandidates = new ArrayList<>();
-        for (NormalizedProduct candidate : candidates) {
-            double similarity = calculateSimilarity.apply(product, candidate);
-            sortedCandidates.add(new SimilarityCandidatePair(similarity, candidate));
-        }
-        sortedCandidates.sort((o1, o2) -> Double.compare(o2.similarity(), o1.similarity()));
-        return sortedCandidates;
+        scoringEngine.scoreProducts(smallerEshop.products, scoreLimit, smallerEshop, largerEshop, true);
+
+        String eshopPair = ProductPairingManager.eshopPairName(smallerEshop, largerEshop);
+        assignProducts(eshopPair, eshopPair);
     }
 }
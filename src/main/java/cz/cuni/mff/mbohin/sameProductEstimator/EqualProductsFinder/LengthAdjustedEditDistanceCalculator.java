@@ -1,32 +1,80 @@
 package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
 
-import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
 import cz.cuni.mff.mbohin.sameProductEstimator.LevenshteinDistance;
+import cz.cuni.mff.mbohin.sameProductEstimator.ProductFeatures;
 
 /**
  * A {@link SimilarityCalculator} implementation that calculates the length-adjusted edit distance similarity between two products.
- * This class normalizes product names by removing whitespaces and converting to lowercase, computes the edit distance,
+ * This class compares product names stripped of whitespaces and converted to lowercase, as precomputed in {@link ProductFeatures}, computes the edit distance,
  * adjusts it by subtracting the absolute difference in name lengths, and normalizes the result.
+ * Since the scores only rank candidates, the edit distance is computed only up to the distance corresponding to
+ * {@link RuntimeConfig#minEditDistanceSimilarity}, which keeps the cost of dissimilar pairs low.
  */
 public class LengthAdjustedEditDistanceCalculator extends SimilarityCalculator {
     /**
-     * Calculates the length-adjusted edit distance similarity between two products. The product names are first normalized by removing
-     * whitespaces and converting to lowercase. The edit distance is then adjusted by subtracting the absolute difference in name lengths.
+     * Calculates the length-adjusted edit distance similarity between two products. The product names are compared without
+     * whitespaces and converted to lowercase. The edit distance is then adjusted by subtracting the absolute difference in name lengths.
      * This adjusted value is normalized by dividing by the minimum length of the two names, yielding a similarity score that accounts for
-     * name length discrepancies.
+     * name length discrepancies. Candidates less similar than {@link RuntimeConfig#minEditDistanceSimilarity} are not scored exactly,
+     * they receive a score just below the minimum similarity, so they still rank below all more similar candidates.
      *
      * @param product the first product for similarity comparison
      * @param candidate the second product for similarity comparison
      * @return the normalized length-adjusted edit distance as a double, providing a similarity measure between the two products
      */
     @Override
-    public double calculate(NormalizedProduct product, NormalizedProduct candidate) {
-        String parsedProductName = removeWS(product.name).toLowerCase();
-        String parsedCandidateName = removeWS(candidate.name).toLowerCase();
+    public double calculate(ProductFeatures product, ProductFeatures candidate) {
+        String parsedProductName = product.strippedLowerCaseName();
+        String parsedCandidateName = candidate.strippedLowerCaseName();
 
-        int editDistance = LevenshteinDistance.lengthAdjustedEditDistance(parsedProductName, parsedCandidateName);
         int minLength = Math.min(parsedProductName.length(), parsedCandidateName.length());
+        int maxEditDistance = (int) Math.floor(minLength * (1 - RuntimeConfig.minEditDistanceSimilarity));
+        int editDistance = LevenshteinDistance.lengthAdjustedEditDistance(parsedProductName, parsedCandidateName, Math.max(0, maxEditDistance));
 
         return (double) (minLength - editDistance) / minLength;
     }
+
+    /**
+     * Returns the name of the similarity type.
+     *
+     * @return {@code "LengthAdjustedEditationDistance"}
+     */
+    @Override
+    public String name() {
+        return "LengthAdjustedEditationDistance";
+    }
+
+    /**
+     * Returns the relative cost of the calculation, a bit-parallel or banded string algorithm.
+     *
+     * @return 10
+     */
+    @Override
+    public int relativeCost() {
+        return 10;
+    }
+
+    /**
+     * Declares the similarity bounded by filters. An alignment of the names with M matched characters yields an adjusted
+     * edit distance of at least {@code minLength - M}, so the similarity never exceeds the share of common characters.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isBoundedByFilters() {
+        return true;
+    }
+
+    /**
+     * Widens the bound to {@link RuntimeConfig#minEditDistanceSimilarity}, since candidates below the minimum similarity receive
+     * an approximate score just below the minimum, which may exceed their exact score.
+     *
+     * @param filterScore the lowest score of the upper-bound filters
+     * @return the greater of the filter score and the minimum exactly computed similarity
+     */
+    @Override
+    public double upperBound(double filterScore) {
+        return Math.max(filterScore, RuntimeConfig.minEditDistanceSimilarity);
+    }
 }
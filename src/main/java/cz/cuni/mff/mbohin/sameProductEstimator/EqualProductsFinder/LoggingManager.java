@@ -1,40 +1,42 @@
 package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
 
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
 import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
 import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
 import cz.cuni.mff.mbohin.sameProductEstimator.EshopSubstrings;
 import cz.cuni.mff.mbohin.sameProductEstimator.SimilarityCandidatePair;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.logging.Level;
-import java.util.Random;
 import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * The LoggingManager class handles logging for the EqualProductsFinder class.
- * It provides methods to delete text files in a specified directory, log statistical information
+ * It provides methods to delete the results file of a previous run, log statistical information
  * about candidate frequencies, and log sorted candidate products based on various similarity measures.
- * The class also ensures that file paths for logs are unique to prevent overwriting existing files.
  * Key functionalities include:
- * - Deleting old log files to prepare directories for new logs.
+ * - Deleting old results files to prepare directories for new logs.
  * - Logging detailed statistical information about product comparisons.
- * - Logging sorted candidate products for further analysis.
+ * - Logging sorted candidate products for further analysis through an asynchronous {@link ResultWriter}.
  * The class uses the Java Logger API to handle logging errors and important information.
  */
 public class LoggingManager {
     private static final Logger LOGGER = Logger.getLogger("EqualProductsFinder logger");
     private static final String loggingDirectory = "./out/equalProductsFinder/";
+    private static final Path resultsFile = Paths.get(loggingDirectory, "results.bin");
+    private static final ResultWriter resultWriter = new ResultWriter(resultsFile);
 
     /**
-     * Prepares the state of output directories by creating necessary directories and cleaning up old log files.
-     * It sets up directories for each similarity type and e-shop pair to log the results of similarity comparisons.
+     * Prepares the state of output directories by creating the logging directory and deleting the results file of a previous run.
+     * Rankings left as text files by earlier versions are deleted as well, see {@link #deleteLegacyResults()}.
      *
      * @param kosikProducts the list of normalized products from Kosik e-shop
      * @param rohlikProducts the list of normalized products from Rohlik e-shop
@@ -44,44 +46,66 @@ public class LoggingManager {
         File directory = new File(loggingDirectory);
         assert directory.mkdirs();
 
-        List<String> similarityTypes = Arrays.asList(
-                "substringSimilarity",
-                "prefixSimilarity",
-                "LongestCommonSubsequenceSimilarity",
-                "LengthAdjustedEditationDistance"
-        );
+        deleteLegacyResults();
+        resultWriter.reset();
+    }
 
-        List<String> eshopPairs = ProductPairingManager.formEshopPairsBasedOnSize(kosikProducts, rohlikProducts, tescoProducts);
+    /**
+     * Deletes the rankings written as text files by earlier versions into the directory of every e-shop pair, both a file per
+     * similarity type and a directory per similarity type holding a file per product. The one-to-one assignment of the pair
+     * is kept. Once deleted, later runs find nothing to delete, as the rankings are only written into the results file.
+     */
+    private static void deleteLegacyResults() {
+        File[] pairDirectories = new File(loggingDirectory).listFiles(File::isDirectory);
+        if (pairDirectories == null)
+            return;
 
-        for(var similarityType : similarityTypes) {
-            for (var eshopPair : eshopPairs) {
-                String directoryForCleanUp = loggingDirectory + eshopPair + "/" + similarityType + "/";
-                deleteTextFiles(directoryForCleanUp);
+        for (File pairDirectory : pairDirectories) {
+            File[] files = pairDirectory.listFiles();
+            if (files == null)
+                continue;
+
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteTextFiles(file);
+                    if (!file.delete())
+                        LOGGER.log(Level.WARNING, "Failed to delete directory of legacy results: " + file);
+                } else if (isTextFile(file.getName()) && !file.getName().equals("assignment.txt") && !file.delete()) {
+                    LOGGER.log(Level.WARNING, "Failed to delete legacy results file: " + file);
+                }
             }
         }
     }
 
+    private static void deleteTextFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) -> isTextFile(name));
+        if (files == null)
+            return;
+        for (File file : files) {
+            if (file.isFile() && !file.delete())
+                LOGGER.log(Level.WARNING, "Failed to delete legacy results file: " + file);
+        }
+    }
+
+    private static boolean isTextFile(String name) {
+        return name.endsWith(".txt") || name.endsWith(".txt.gz");
+    }
+
     /**
-     * Asserts that the specified string parameter is indeed a directory, and deletes all files with a ".txt" extension.
-     * It checks if the directory exists and is a directory, then finds and deletes all ".txt" files within.
-     * If the path is not valid or not a directory, it prints an error message.
-     *
-     * @param directoryPath the path to the directory where text files will be deleted
+     * Continues the results file of the previous run instead of deleting it, so that the rankings restored from it stay indexed
+     * and only the rankings computed in this run are appended.
      */
-    private static void deleteTextFiles(String directoryPath) {
-        File directory = new File(directoryPath);
-        assert directory.mkdirs();
+    public static void resumeStateOfOutputDirectories() {
+        resultWriter.resume();
+    }
 
-        if (directory.exists() && directory.isDirectory()) {
-            File[] files = directory.listFiles((dir, name) -> name.endsWith(".txt"));
-            if (files != null) {
-                for (File file : files) {
-                    assert !file.isFile() || file.delete();
-                }
-            }
-        } else {
-            System.out.println("The provided path does not exist or is not a directory.");
-        }
+    /**
+     * Returns the path of the results file holding the rankings of all scored products.
+     *
+     * @return the path of the results file
+     */
+    public static Path resultsFile() {
+        return resultsFile;
     }
 
     /**
@@ -90,10 +114,13 @@ public class LoggingManager {
      * average candidates per product, and the percentage of candidates relative to the total possible pairs.
      *
      * @param equalCandidatesFrequencies a TreeMap where keys are the number of equal candidates and values are their frequencies
+     * @param unprunedCandidatesSum the number of all candidates before pruning by token overlap
      * @param smallerEshop an instance of EshopSubstrings representing the e-shop with fewer products
      * @param largerEshop an instance of EshopSubstrings representing the e-shop with more products
+     * @param recall the estimated recall of the candidate generator, or null if it has not been estimated
      */
-    public static void logStatsOfCandidates(TreeMap<Integer, Integer> equalCandidatesFrequencies, EshopSubstrings smallerEshop, EshopSubstrings largerEshop) {
+    public static void logStatsOfCandidates(TreeMap<Integer, Integer> equalCandidatesFrequencies, long unprunedCandidatesSum, EshopSubstrings smallerEshop, EshopSubstrings largerEshop,
+                                            CandidateRecall.Estimate recall) {
         Eshop smallerName = smallerEshop.products.getFirst().eshop;
         Eshop largerName = largerEshop.products.getFirst().eshop;
 
@@ -101,7 +128,8 @@ public class LoggingManager {
         try (PrintWriter sw = new PrintWriter(filePath)) {
             sw.println("Equal candidates frequencies of " + smallerName + " -> " + largerName);
 
-            Statistics statistics = new Statistics(equalCandidatesFrequencies, smallerEshop.products.size(), largerEshop.products.size());
+            Statistics statistics = new Statistics(equalCandidatesFrequencies, unprunedCandidatesSum, smallerEshop.products.size(), largerEshop.products.size(),
+                    RuntimeConfig.candidateGenerator, recall);
             sw.println(statistics.getFormattedStatistics());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "An error occurred in logStatsOfCandidates", e);
@@ -109,61 +137,116 @@ public class LoggingManager {
     }
 
     /**
-     * Logs the sorted list of candidate products based on their similarity to a product from a smaller e-shop.
-     * This method constructs a directory path based on the product and similarity type, creates the directory if it does not exist,
-     * and logs details of the similarity comparison into a file within this directory. Each entry includes the similarity score,
-     * candidate product name, and URL. If the directory cannot be created or a file writing error occurs, it logs a severe error.
+     * Logs the one-to-one assignment of products of an e-shop pair into the file {@code assignment.txt} of the pair's directory,
+     * replacing the previous assignment. Each line holds the combined score followed by the name and URL of the product from the
+     * smaller e-shop and the name and URL of the matched product from the larger e-shop.
      *
-     * @param similarityType the type of similarity by which the candidates are sorted (e.g., "substringSimilarity")
-     * @param product the reference product from the smaller e-shop
-     * @param largerEshop the larger e-shop containing candidate products
-     * @param sortedCandidates a list of candidates sorted by the specified similarity type, each paired with their similarity score
+     * @param eshopPair the name of the e-shop pair
+     * @param matches the matched pairs sorted by score in descending order
      */
-    public static void logSortedCandidates(String similarityType, NormalizedProduct product, EshopSubstrings largerEshop, List<SimilarityCandidatePair> sortedCandidates) {
-        NormalizedProduct largerName = largerEshop.products.getFirst();
-        String directoryPath = loggingDirectory + product.eshop + "_to_" + largerName.eshop + "/" + similarityType + "/";
+    public static void logAssignment(String eshopPair, List<OneToOneAssignment.Match> matches) {
+        String directoryPath = loggingDirectory + eshopPair + "/";
         File directory = new File(directoryPath);
         if (!directory.exists() && !directory.mkdirs()) {
             LOGGER.log(Level.SEVERE, "Failed to create directory: " + directoryPath);
             return;
         }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("Equal candidates of ").append(product.name).append(", to be found at url: ").append(product.url).append("\n");
+        try (PrintWriter sw = new PrintWriter(directoryPath + "assignment.txt")) {
+            sw.println("One-to-one assignment of " + eshopPair + ", " + matches.size() + " matched pairs");
+            for (OneToOneAssignment.Match match : matches) {
+                sw.printf("%.4f\t%s\t%s\t%s\t%s%n", match.score(), match.product().name, match.product().url, match.candidate().name, match.candidate().url);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "An error occurred in logAssignment", e);
+        }
+    }
 
-        for (SimilarityCandidatePair candidate : sortedCandidates) {
-            sb.append(String.format("%.4f\t%s\t%s\n", candidate.similarity(), candidate.candidate().name, candidate.candidate().url));
+    /**
+     * Logs the table of product clusters into the file {@code clusters.txt} of the logging directory, replacing the previous table.
+     * Each line describes one cluster by its id, consistency, the e-shop and price of the cheapest offer, and for every e-shop
+     * the names, URLs and prices of the cluster's products, multiple products of one e-shop separated by " | " and "-" for none.
+     *
+     * @param productClusters the clusters to be logged
+     */
+    public static void logClusters(ProductClusters productClusters) {
+        try (PrintWriter sw = new PrintWriter(loggingDirectory + "clusters.txt")) {
+            StringBuilder header = new StringBuilder("clusterId\tconsistency\tcheapestEshop\tcheapestPrice");
+            for (Eshop eshop : Eshop.values()) {
+                header.append('\t').append(eshop).append(" name\t").append(eshop).append(" url\t").append(eshop).append(" price");
+            }
+            sw.println(header);
+
+            for (ProductClusters.Cluster cluster : productClusters.clusters()) {
+                StringBuilder line = new StringBuilder(cluster.id()).append('\t').append(cluster.consistency());
+                NormalizedProduct cheapest = cluster.cheapest();
+                line.append('\t').append(cheapest == null ? "-" : cheapest.eshop).append('\t').append(cheapest == null ? "-" : cheapest.price);
+                for (Eshop eshop : Eshop.values()) {
+                    List<NormalizedProduct> products = cluster.members().getOrDefault(eshop, List.of());
+                    line.append('\t').append(joinOrDash(products, product -> product.name))
+                            .append('\t').append(joinOrDash(products, product -> product.url))
+                            .append('\t').append(joinOrDash(products, product -> String.valueOf(product.price)));
+                }
+                sw.println(line);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "An error occurred in logClusters", e);
         }
+    }
 
-        String uniqueFilePath = ensureUniqueFilePath(directoryPath, product.inferredData.getUniqueFileName());
+    private static String joinOrDash(List<NormalizedProduct> products, Function<NormalizedProduct, String> attribute) {
+        return products.isEmpty() ? "-" : products.stream().map(attribute).collect(Collectors.joining(" | "));
+    }
 
-        try (FileWriter fw = new FileWriter(uniqueFilePath)) {
-            fw.write(sb.toString());
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "An error occurred in logSortedCandidates", e);
-        }
+    /**
+     * Logs the sorted list of candidate products based on their similarity to a product from a smaller e-shop.
+     * The ranking is handed to the {@link ResultWriter}, which appends it to the {@link ResultsFile} {@code results.bin} of the logging
+     * directory on its own thread. The rankings of a product can be printed by {@link ResultsReader}.
+     *
+     * @param eshopPair the name of the e-shop pair, formatted as "smallerEshop_to_largerEshop"
+     * @param similarityType the type of similarity by which the candidates are sorted (e.g., "substringSimilarity")
+     * @param product the reference product from the smaller e-shop
+     * @param sortedCandidates a list of candidates sorted by the specified similarity type, each paired with their similarity score
+     */
+    public static void logSortedCandidates(String eshopPair, String similarityType, NormalizedProduct product, List<SimilarityCandidatePair> sortedCandidates) {
+        resultWriter.write(eshopPair, similarityType, product, sortedCandidates);
     }
 
     /**
-     * Ensures that the file path is unique within the specified directory by appending a random number to the filename if necessary.
-     * It checks if a file with the given name already exists in the directory; if it does, it generates a new filename with a random number
-     * appended to the base filename until a unique filename is obtained. The method finally returns the path of this unique file.
+     * Drops the rankings of a product within an e-shop pair from the index of the results file, typically because the product
+     * was removed from its catalogue or is about to be logged again with new results.
      *
-     * @param directory the directory in which to check for uniqueness of the file
-     * @param filename the initial filename (without an extension) to use for creating the file
-     * @return the unique file path as a String
+     * @param eshopPair the name of the e-shop pair
+     * @param product the product from the smaller e-shop
      */
-    private static String ensureUniqueFilePath(String directory, String filename) {
-        File file = new File(directory, filename + ".txt");
-        while (file.exists()) {
-            int randomNumber = new Random().nextInt(Integer.MAX_VALUE) + 1;
-            file = new File(directory, filenameWithoutExtension(filename) + "_" + randomNumber + ".txt");
-        }
-        return file.getPath();
+    public static void discardSortedCandidates(String eshopPair, NormalizedProduct product) {
+        resultWriter.discard(eshopPair, product);
+    }
+
+    /**
+     * Drops all rankings of an e-shop pair from the index of the results file.
+     *
+     * @param eshopPair the name of the e-shop pair
+     */
+    public static void discardSortedCandidatesOf(String eshopPair) {
+        resultWriter.discardPair(eshopPair);
     }
 
-    private static String filenameWithoutExtension(String filename) {
-        int dotIndex = filename.lastIndexOf('.');
-        return (dotIndex == -1) ? filename : filename.substring(0, dotIndex);
+    /**
+     * Waits until all logged rankings are written to the results file and indexed.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public static void flushSortedCandidates() throws InterruptedException {
+        resultWriter.flush();
+    }
+
+    /**
+     * Determines whether some logged rankings could not be written to the results file.
+     *
+     * @return true if the results file is incomplete
+     */
+    public static boolean sortedCandidatesFailed() {
+        return resultWriter.hasFailed();
     }
 }
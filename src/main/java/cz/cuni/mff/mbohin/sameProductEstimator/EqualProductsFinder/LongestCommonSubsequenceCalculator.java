@@ -1,16 +1,16 @@
 package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
 
-import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
 import cz.cuni.mff.mbohin.sameProductEstimator.LCSFinder;
+import cz.cuni.mff.mbohin.sameProductEstimator.ProductFeatures;
 
 /**
  * A {@link SimilarityCalculator} implementation that calculates the similarity between two products based on the longest common subsequence (LCS) of their names.
- * This class normalizes product names by removing whitespaces and converting to lowercase, computes the LCS, and normalizes the result by the minimum length of the two names.
+ * This class compares product names stripped of whitespaces and converted to lowercase, as precomputed in {@link ProductFeatures}, computes the LCS, and normalizes the result by the minimum length of the two names.
  */
 public class LongestCommonSubsequenceCalculator extends SimilarityCalculator {
     /**
      * Calculates the similarity between two products based on the longest common subsequence (LCS) of their names.
-     * The names are first preprocessed by removing all whitespaces and converting them to lowercase. The LCS is computed,
+     * The names are compared without any whitespaces and converted to lowercase. The LCS is computed,
      * and the similarity ratio is determined by dividing the LCS length by the minimum length of the two processed names.
      * This method provides a normalized measure of similarity that accounts for the longest sequence of characters that appear
      * in both names in the same order.
@@ -20,12 +20,43 @@ public class LongestCommonSubsequenceCalculator extends SimilarityCalculator {
      * @return the similarity ratio as a double, representing the length of LCS divided by the shortest name length
      */
     @Override
-    public double calculate(NormalizedProduct product, NormalizedProduct candidate) {
-        String parsedProductName = removeWS(product.name).toLowerCase();
-        String parsedCandidateName = removeWS(candidate.name).toLowerCase();
+    public double calculate(ProductFeatures product, ProductFeatures candidate) {
+        String parsedProductName = product.strippedLowerCaseName();
+        String parsedCandidateName = candidate.strippedLowerCaseName();
 
         int LCS = LCSFinder.longestCommonSubsequence(parsedProductName, parsedCandidateName);
 
         return (double)LCS / Math.min(parsedProductName.length(), parsedCandidateName.length());
     }
+
+    /**
+     * Returns the name of the similarity type.
+     *
+     * @return {@code "LongestCommonSubsequenceSimilarity"}
+     */
+    @Override
+    public String name() {
+        return "LongestCommonSubsequenceSimilarity";
+    }
+
+    /**
+     * Returns the relative cost of the calculation, a bit-parallel or quadratic string algorithm.
+     *
+     * @return 10
+     */
+    @Override
+    public int relativeCost() {
+        return 10;
+    }
+
+    /**
+     * Declares the similarity bounded by filters, since the length of the longest common subsequence never exceeds the number
+     * of characters the names have in common.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isBoundedByFilters() {
+        return true;
+    }
 }
@@ -0,0 +1,101 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.productParser.snapshot.ProductSnapshot;
+import cz.cuni.mff.mbohin.productParser.snapshot.SourceFingerprint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the catalogues the rankings of the {@link ResultsFile} were computed from, so that the next run can restore the rankings
+ * and re-match only what changed since. The catalogue of every e-shop is stored in a {@link ProductSnapshot} next to the snapshots
+ * of the data sources, stamped with the {@link SourceFingerprint} of the results file instead of a data source. The catalogues are
+ * therefore only restored together with the very results file they were saved with.
+ */
+public class MatchedCatalogues {
+    private static final Logger LOGGER = Logger.getLogger("MatchedCatalogues logger");
+
+    /**
+     * Returns the path of the snapshot of the matched catalogue of the specified e-shop.
+     *
+     * @param eshop the e-shop whose snapshot path is requested
+     * @return the path to the snapshot file
+     */
+    public static Path snapshotPath(Eshop eshop) {
+        return Paths.get(RuntimeConfig.snapshotDirectory, eshop + ".matched.snapshot");
+    }
+
+    /**
+     * Saves the catalogues of all e-shops, stamped with the fingerprint of the results file holding their rankings.
+     * Failures are logged, and the snapshots are deleted, so that the next run matches all catalogues from scratch.
+     *
+     * @param catalogues the catalogues of all e-shops
+     * @param resultsFile the path of the complete results file
+     */
+    public static void save(Map<Eshop, List<NormalizedProduct>> catalogues, Path resultsFile) {
+        SourceFingerprint fingerprint;
+        try {
+            fingerprint = SourceFingerprint.of(resultsFile.toString());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to fingerprint results file " + resultsFile + ", the next run matches all catalogues", e);
+            delete();
+            return;
+        }
+
+        for (Map.Entry<Eshop, List<NormalizedProduct>> entry : catalogues.entrySet()) {
+            ProductSnapshot.save(snapshotPath(entry.getKey()), entry.getKey(), fingerprint, entry.getValue());
+        }
+    }
+
+    /**
+     * Loads the catalogues of all e-shops saved together with the specified results file.
+     *
+     * @param resultsFile the path of the results file
+     * @return the catalogues the rankings of the results file were computed from, or null if the results file or a valid snapshot
+     *         of any e-shop is missing
+     */
+    public static Map<Eshop, List<NormalizedProduct>> load(Path resultsFile) {
+        if (!Files.isRegularFile(resultsFile))
+            return null;
+
+        SourceFingerprint fingerprint;
+        try {
+            fingerprint = SourceFingerprint.of(resultsFile.toString());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to fingerprint results file " + resultsFile, e);
+            return null;
+        }
+
+        Map<Eshop, List<NormalizedProduct>> catalogues = new EnumMap<>(Eshop.class);
+        for (Eshop eshop : Eshop.values()) {
+            List<NormalizedProduct> products = ProductSnapshot.load(snapshotPath(eshop), eshop, fingerprint);
+            if (products == null)
+                return null;
+            catalogues.put(eshop, products);
+        }
+        return catalogues;
+    }
+
+    /**
+     * Deletes the snapshots of all matched catalogues. Failures are logged and otherwise ignored.
+     */
+    public static void delete() {
+        for (Eshop eshop : Eshop.values()) {
+            try {
+                Files.deleteIfExists(snapshotPath(eshop));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to delete matched catalogue " + snapshotPath(eshop), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.sameProductEstimator.TopScoredIds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which product of the larger e-shop of a pair is the same product as a product of the smaller e-shop, so that every
+ * product is matched with at most one product of the other e-shop. The decision is made on the sparse bipartite graph whose
+ * edges are the best candidates of every product by the {@linkplain CombinedScorer combined score}, as kept in the
+ * {@link RankingStore}, never on a dense matrix of all product pairs.
+ *
+ * <p>The assignment is greedy: the edges are visited by descending score and an edge is accepted if neither of its products has
+ * been matched yet. An accepted pair is thus the mutual best of the products remaining at that moment, and the total score
+ * is at least half of the optimal assignment. With E edges the assignment costs O(E log E) time and O(E) memory, which scales to
+ * catalogues of 100k products with a few edges per product.</p>
+ */
+public class OneToOneAssignment {
+    /**
+     * A pair of products considered to be the same product.
+     *
+     * @param product the product from the smaller e-shop
+     * @param candidate the matched product from the larger e-shop
+     * @param score the combined score of the pair
+     */
+    public record Match(NormalizedProduct product, NormalizedProduct candidate, double score) { }
+
+    /**
+     * Assigns products of the larger e-shop to products of the smaller e-shop one-to-one.
+     *
+     * @param assignmentCandidates the stored assignment candidates of the products of the smaller e-shop
+     * @param candidatesPerProduct the number of best candidates of every product taken as edges, 0 or less for all of them
+     * @param minScore the minimum combined score of a matched pair
+     * @return the matched pairs sorted by score in descending order
+     */
+    public static List<Match> assign(Collection<RankingStore.AssignmentCandidates> assignmentCandidates, int candidatesPerProduct, double minScore) {
+        List<RankingStore.AssignmentCandidates> sortedCandidates = new ArrayList<>(assignmentCandidates);
+        sortedCandidates.sort(Comparator.comparing(candidates -> candidates.product().url));
+
+        List<NormalizedProduct> edgeProducts = new ArrayList<>();
+        List<NormalizedProduct> edgeCandidates = new ArrayList<>();
+        double[] edgeScores = new double[Math.max(16, sortedCandidates.size())];
+        for (RankingStore.AssignmentCandidates candidates : sortedCandidates) {
+            int edges = candidatesPerProduct > 0 ? Math.min(candidatesPerProduct, candidates.candidates().length) : candidates.candidates().length;
+            for (int i = 0; i < edges && candidates.scores()[i] >= minScore; i++) {
+                edgeProducts.add(candidates.product());
+                edgeCandidates.add(candidates.candidates()[i]);
+                if (edgeProducts.size() > edgeScores.length)
+                    edgeScores = Arrays.copyOf(edgeScores, edgeScores.length * 2);
+                edgeScores[edgeProducts.size() - 1] = candidates.scores()[i];
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        if (edgeProducts.isEmpty())
+            return matches;
+
+        TopScoredIds edgeOrder = new TopScoredIds();
+        edgeOrder.reset(edgeProducts.size());
+        for (int edge = 0; edge < edgeProducts.size(); edge++) {
+            edgeOrder.offer(edge, edgeScores[edge]);
+        }
+        edgeOrder.sortDescending();
+
+        Set<String> matchedProducts = new HashSet<>();
+        Set<String> matchedCandidates = new HashSet<>();
+        for (int k = 0; k < edgeOrder.size(); k++) {
+            int edge = edgeOrder.id(k);
+            NormalizedProduct product = edgeProducts.get(edge);
+            NormalizedProduct candidate = edgeCandidates.get(edge);
+            if (matchedProducts.contains(product.url) || matchedCandidates.contains(candidate.url))
+                continue;
+
+            matchedProducts.add(product.url);
+            matchedCandidates.add(candidate.url);
+            matches.add(new Match(product, candidate, edgeOrder.score(k)));
+        }
+        return matches;
+    }
+}
@@ -1,54 +1,59 @@
 package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
 
-import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.sameProductEstimator.ProductFeatures;
 
 /**
  * A {@link SimilarityCalculator} implementation that calculates the similarity between two products based on the length of their common prefix.
- * This class normalizes product names by converting them to lowercase, computes the common prefix length, and normalizes the result by the minimum length of the two names.
+ * This class compares the lowercased product names precomputed in {@link ProductFeatures}, computes the common prefix length, and normalizes the result by the minimum length of the two names.
  */
 public class PrefixSimilarityCalculator extends SimilarityCalculator {
     /**
-     * Calculates the similarity between two products based on the length of their common prefix. The product names are first normalized
-     * by converting them to lowercase. The similarity ratio is determined by the length of the common prefix divided by the minimum length
+     * Calculates the similarity between two products based on the length of their common prefix. The product names are compared
+     * in lowercase. The similarity ratio is determined by the length of the common prefix divided by the minimum length
      * of the two product names. This method provides a measure of how similar two product names are, based purely on the initial characters they share.
      *
      * @param product the first product for prefix similarity comparison
      * @param candidate the second product for prefix similarity comparison
      * @return the similarity ratio as a double, representing the proportion of the common prefix length to the shorter product name length
+     * @throws IllegalArgumentException if either name is empty, indicating improper prior processing
      */
     @Override
-    public double calculate(NormalizedProduct product, NormalizedProduct candidate) {
-        String parsedProductName = product.name.toLowerCase();
-        String parsedCandidateName = candidate.name.toLowerCase();
+    public double calculate(ProductFeatures product, ProductFeatures candidate) {
+        if (product.nameLength() == 0 || candidate.nameLength() == 0)
+            throw new IllegalArgumentException("Critical error in code architecture detected. Parsed product names at this point may not be null or empty.");
 
-        int commonPrefixLength = commonPrefixLength(parsedProductName, parsedCandidateName);
+        int commonPrefixLength = product.commonPrefixLength(candidate);
 
-        return (double) commonPrefixLength / Math.min(parsedProductName.length(), parsedCandidateName.length());
+        return (double) commonPrefixLength / Math.min(product.nameLength(), candidate.nameLength());
     }
 
     /**
-     * Computes the length of the common prefix between two strings. This method iteratively compares characters
-     * from the start of both strings and counts how many characters are identical until it encounters a mismatch.
-     * It requires that neither string be null nor empty, throwing an IllegalArgumentException if this precondition is not met.
+     * Returns the name of the similarity type.
      *
-     * @param parsedProductName the normalized name of the first product
-     * @param parsedCandidateName the normalized name of the second product
-     * @return the length of the common prefix shared by the two product names
-     * @throws IllegalArgumentException if either input string is null or empty, indicating improper prior processing
+     * @return {@code "prefixSimilarity"}
      */
-    private static int commonPrefixLength(String parsedProductName, String parsedCandidateName) {
-        if (parsedProductName == null || parsedCandidateName == null || parsedProductName.isEmpty() || parsedCandidateName.isEmpty())
-            throw new IllegalArgumentException("Critical error in code architecture detected. Parsed product names at this point may not be null or empty.");
+    @Override
+    public String name() {
+        return "prefixSimilarity";
+    }
 
-        int prefixLength = 0;
-        for (int i = 0; i < Math.min(parsedProductName.length(), parsedCandidateName.length()); i++) {
-            if (parsedProductName.charAt(i) == parsedCandidateName.charAt(i)) {
-                prefixLength++;
-            } else {
-                break;
-            }
-        }
+    /**
+     * Returns the relative cost of the calculation, a scan of the leading characters of both names.
+     *
+     * @return 1
+     */
+    @Override
+    public int relativeCost() {
+        return 1;
+    }
 
-        return prefixLength;
+    /**
+     * Declares the calculator a cascade gate, since the common beginning of the names is cheap to compute and a match without it is unlikely.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isCascadeGate() {
+        return true;
     }
 }
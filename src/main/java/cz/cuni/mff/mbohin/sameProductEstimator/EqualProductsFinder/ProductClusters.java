@@ -0,0 +1,176 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.sameProductEstimator.ConcurrentUnionFind;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Global clusters of the same product across all e-shops, reconciling the {@linkplain OneToOneAssignment one-to-one assignments}
+ * of the individual e-shop pairs. Every accepted match is an edge between two products, and the connected components of the
+ * edges of all pairs, found by a {@link ConcurrentUnionFind} uniting the edges in parallel, are the clusters.
+ *
+ * <p>Since the pairs are assigned independently, their matches need not agree. A cluster is flagged as
+ * <ul>
+ * <li>{@link Consistency#CONFLICT} if it contains more than one product of an e-shop, e.g. when KOSIK product A matches ROHLIK
+ * product B, B matches TESCO product C, and C matches another KOSIK product D,</li>
+ * <li>{@link Consistency#OPEN_TRIANGLE} if it contains one product of each of three e-shops but only two of the three pairs were matched,</li>
+ * <li>{@link Consistency#CONSISTENT} otherwise.</li>
+ * </ul>
+ *
+ * <p>The id of a cluster is derived from the lexicographically smallest URL of its products, so a cluster keeps its id across
+ * runs as long as that product stays in it. Every product is mapped to its cluster and every cluster knows its cheapest
+ * offer, so the cheapest e-shop for a product is found in O(1).</p>
+ */
+public class ProductClusters {
+    /**
+     * The agreement of the pairwise matches forming a cluster.
+     */
+    public enum Consistency { CONSISTENT, OPEN_TRIANGLE, CONFLICT }
+
+    /**
+     * A cluster of products considered to be the same product.
+     *
+     * @param id the stable id of the cluster
+     * @param members the products of the cluster grouped by e-shop, sorted by URL within an e-shop
+     * @param consistency the agreement of the matches forming the cluster
+     * @param cheapest the product with the lowest price, null if no product has a price
+     */
+    public record Cluster(String id, Map<Eshop, List<NormalizedProduct>> members, Consistency consistency, NormalizedProduct cheapest) { }
+
+    private final List<Cluster> clusters;
+    private final Map<String, Cluster> clustersByUrl;
+
+    private ProductClusters(List<Cluster> clusters, Map<String, Cluster> clustersByUrl) {
+        this.clusters = clusters;
+        this.clustersByUrl = clustersByUrl;
+    }
+
+    /**
+     * Builds the clusters from the matches of all e-shop pairs.
+     *
+     * @param assignments the matches of every e-shop pair, keyed by the pair name
+     * @return the clusters of all matched products
+     */
+    public static ProductClusters build(Map<String, List<OneToOneAssignment.Match>> assignments) {
+        Map<String, Integer> indicesByUrl = new HashMap<>();
+        List<NormalizedProduct> products = new ArrayList<>();
+        List<int[]> edges = new ArrayList<>();
+        for (List<OneToOneAssignment.Match> matches : new TreeMap<>(assignments).values()) {
+            for (OneToOneAssignment.Match match : matches) {
+                edges.add(new int[] { indexOf(match.product(), indicesByUrl, products), indexOf(match.candidate(), indicesByUrl, products) });
+            }
+        }
+
+        ConcurrentUnionFind components = new ConcurrentUnionFind(products.size());
+        IntStream.range(0, edges.size()).parallel().forEach(edge -> components.union(edges.get(edge)[0], edges.get(edge)[1]));
+
+        Map<Integer, List<NormalizedProduct>> productsByRoot = new HashMap<>();
+        Map<Integer, Integer> edgeCountsByRoot = new HashMap<>();
+        for (int i = 0; i < products.size(); i++) {
+            productsByRoot.computeIfAbsent(components.find(i), root -> new ArrayList<>()).add(products.get(i));
+        }
+        for (int[] edge : edges) {
+            edgeCountsByRoot.merge(components.find(edge[0]), 1, Integer::sum);
+        }
+
+        List<Cluster> clusters = new ArrayList<>(productsByRoot.size());
+        Map<String, Cluster> clustersByUrl = new HashMap<>();
+        for (Map.Entry<Integer, List<NormalizedProduct>> component : productsByRoot.entrySet()) {
+            Cluster cluster = toCluster(component.getValue(), edgeCountsByRoot.getOrDefault(component.getKey(), 0));
+            clusters.add(cluster);
+            for (NormalizedProduct product : component.getValue()) {
+                clustersByUrl.put(product.url, cluster);
+            }
+        }
+        clusters.sort(Comparator.comparing(Cluster::id));
+        return new ProductClusters(Collections.unmodifiableList(clusters), clustersByUrl);
+    }
+
+    /**
+     * Returns all clusters sorted by id.
+     *
+     * @return the clusters
+     */
+    public List<Cluster> clusters() {
+        return clusters;
+    }
+
+    /**
+     * Returns the cluster of a product.
+     *
+     * @param url the URL of the product
+     * @return the cluster containing the product, null if the product has not been matched with any other product
+     */
+    public Cluster clusterOf(String url) {
+        return clustersByUrl.get(url);
+    }
+
+    /**
+     * Returns the cheapest offer of the same product as the specified one across all e-shops.
+     *
+     * @param url the URL of the product
+     * @return the cheapest product of the product's cluster, null if the product is not clustered or has no priced offer
+     */
+    public NormalizedProduct cheapestOffer(String url) {
+        Cluster cluster = clustersByUrl.get(url);
+        return cluster == null ? null : cluster.cheapest();
+    }
+
+    /**
+     * Counts the clusters of the specified consistency.
+     *
+     * @param consistency the consistency
+     * @return the number of clusters flagged with the consistency
+     */
+    public long count(Consistency consistency) {
+        return clusters.stream().filter(cluster -> cluster.consistency() == consistency).count();
+    }
+
+    private static int indexOf(NormalizedProduct product, Map<String, Integer> indicesByUrl, List<NormalizedProduct> products) {
+        return indicesByUrl.computeIfAbsent(product.url, url -> {
+            products.add(product);
+            return products.size() - 1;
+        });
+    }
+
+    private static Cluster toCluster(List<NormalizedProduct> products, int edgeCount) {
+        Map<Eshop, List<NormalizedProduct>> members = new EnumMap<>(Eshop.class);
+        NormalizedProduct cheapest = null;
+        String anchorUrl = null;
+        for (NormalizedProduct product : products) {
+            members.computeIfAbsent(product.eshop, eshop -> new ArrayList<>()).add(product);
+            if (product.price != null && (cheapest == null || product.price.compareTo(cheapest.price) < 0))
+                cheapest = product;
+            if (anchorUrl == null || product.url.compareTo(anchorUrl) < 0)
+                anchorUrl = product.url;
+        }
+        members.values().forEach(eshopProducts -> eshopProducts.sort(Comparator.comparing(product -> product.url)));
+
+        Consistency consistency;
+        if (members.values().stream().anyMatch(eshopProducts -> eshopProducts.size() > 1))
+            consistency = Consistency.CONFLICT;
+        else if (members.size() == 3 && edgeCount < 3)
+            consistency = Consistency.OPEN_TRIANGLE;
+        else
+            consistency = Consistency.CONSISTENT;
+
+        return new Cluster(clusterId(anchorUrl), members, consistency, cheapest);
+    }
+
+    private static String clusterId(String anchorUrl) {
+        long hash = UUID.nameUUIDFromBytes(anchorUrl.getBytes(StandardCharsets.UTF_8)).getMostSignificantBits();
+        return String.format("C%016x", hash);
+    }
+}
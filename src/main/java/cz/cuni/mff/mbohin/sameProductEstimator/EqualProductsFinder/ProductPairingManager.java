@@ -1,12 +1,11 @@
 package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
 
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
 import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
 import cz.cuni.mff.mbohin.sameProductEstimator.*;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.TreeMap;
 
 /**
  * Manages the pairing and comparison of products between different e-shops.
@@ -14,11 +13,13 @@ import java.util.TreeMap;
  * generate lists of potential matching products based on substring analysis.
  */
 public class ProductPairingManager {
+    private static final ThreadLocal<CandidateBuffer> CANDIDATE_BUFFERS = ThreadLocal.withInitial(CandidateBuffer::new);
+
     /**
      * Forms a list of e-shop pairs based on the size of their product lists.
      * This method compares the sizes of the product lists from Kosik, Rohlik, and Tesco e-shops,
      * and generates a list of strings representing the pairs of e-shops to be compared.
-     * Each pair is formatted as "smallerEshop_to_largerEshop" based on the size of their product lists.
+     * Each pair is formatted as "smallerEshop_to_largerEshop" based on the size of their product lists, see {@link #isSmaller(List, List)}.
      *
      * @param kosikProducts the list of normalized products from Kosik e-shop
      * @param rohlikProducts the list of normalized products from Rohlik e-shop
@@ -33,8 +34,44 @@ public class ProductPairingManager {
         return results;
     }
 
+    /**
+     * Determines whether the first catalogue is the smaller one of a pair. Catalogues of equal size are ordered by the ordinal
+     * of their e-shop, so that a pair gets the same name and orientation however its e-shops are passed.
+     *
+     * @param first the non-empty catalogue of one e-shop
+     * @param second the non-empty catalogue of the other e-shop
+     * @return true if the first catalogue is the smaller one
+     */
+    public static boolean isSmaller(List<NormalizedProduct> first, List<NormalizedProduct> second) {
+        if (first.size() != second.size())
+            return first.size() < second.size();
+        return first.getFirst().eshop.ordinal() < second.getFirst().eshop.ordinal();
+    }
+
+    /**
+     * Returns the smaller e-shop of a pair, as determined by {@link #isSmaller(List, List)}.
+     *
+     * @param eshopA one e-shop of the pair
+     * @param eshopB the other e-shop of the pair
+     * @return the e-shop with fewer products
+     */
+    public static EshopSubstrings smallerOf(EshopSubstrings eshopA, EshopSubstrings eshopB) {
+        return isSmaller(eshopA.products, eshopB.products) ? eshopA : eshopB;
+    }
+
+    /**
+     * Forms the name of the pair of two e-shops, formatted as "smallerEshop_to_largerEshop".
+     *
+     * @param smallerEshop the e-shop with fewer products
+     * @param largerEshop the e-shop with more products
+     * @return the name of the e-shop pair
+     */
+    public static String eshopPairName(EshopSubstrings smallerEshop, EshopSubstrings largerEshop) {
+        return smallerEshop.products.getFirst().eshop + "_to_" + largerEshop.products.getFirst().eshop;
+    }
+
     private static String compareTwoProductLists(List<NormalizedProduct> firstList, List<NormalizedProduct> secondList) {
-        if (firstList.size() < secondList.size()) {
+        if (isSmaller(firstList, secondList)) {
             return firstList.getFirst().eshop + "_to_" + secondList.getFirst().eshop;
         } else {
             return secondList.getFirst().eshop + "_to_" + firstList.getFirst().eshop;
@@ -42,56 +79,29 @@ public class ProductPairingManager {
     }
 
     /**
-     * Generates a list of potential matching products between a smaller and a larger e-shop based on substring analysis.
-     * Each product in the smaller e-shop is compared against all products in the larger e-shop to determine a set of probable equal products.
-     * This method also logs the frequency of equal candidates found for each product, helping in the analysis of data matching density.
+     * The retained candidates of one product together with the number of candidates before pruning.
      *
-     * @param smallerEshop the e-shop with fewer products, from which products are compared
-     * @param largerEshop the e-shop with more products, against which comparisons are made
-     * @return a list of {@link ProductHashSetCandidatesPair} objects, each representing a product from the smaller e-shop
-     *         and its set of potential matching products from the larger e-shop
+     * @param candidateIds the sorted ids of the retained candidates from the larger e-shop
+     * @param unprunedCount the number of candidates sharing at least one substring with the product
      */
-    public static List<ProductHashSetCandidatesPair> findEqualCandidatesOfProducts(EshopSubstrings smallerEshop, EshopSubstrings largerEshop) {
-        TreeMap<Integer, Integer> equalCandidatesFrequencies = new TreeMap<>();
-        List<ProductHashSetCandidatesPair> equalCandidatesOfProducts = new ArrayList<>();
-
-        for (NormalizedProduct product : smallerEshop.products) {
-            HashSet<NormalizedProduct> equalCandidates = listEqualCandidates(product, largerEshop);
-
-            equalCandidatesFrequencies.putIfAbsent(equalCandidates.size(), 0);
-            equalCandidatesFrequencies.put(equalCandidates.size(), equalCandidatesFrequencies.get(equalCandidates.size()) + 1);
-
-            equalCandidatesOfProducts.add(new ProductHashSetCandidatesPair(product, equalCandidates));
-        }
-
-        LoggingManager.logStatsOfCandidates(equalCandidatesFrequencies, smallerEshop, largerEshop);
-        return equalCandidatesOfProducts;
-    }
+    public record CandidateList(int[] candidateIds, int unprunedCount) { }
 
     /**
-     * Splits the product name into an array of strings based on whitespace and creates a HashSet of equal candidates.
-     * It adds all product references that share at least one substring in their names, which can be efficiently checked
-     * using the substring dictionary in the largerEshop class. Only substrings of at least three characters are considered,
-     * as shorter substrings often connect semantically unrelated products.
+     * Lists ids of products of the larger e-shop that share at least one substring with the given product. The postings
+     * of the product's substrings are merged in the substring dictionary of the largerEshop class. Only substrings of at least
+     * three characters are considered, as shorter substrings often connect semantically unrelated products. The candidates
+     * are pruned by their IDF weighted token overlap as configured by {@link RuntimeConfig#candidateTopK} and
+     * {@link RuntimeConfig#minCandidateOverlapWeight}. Each thread collects candidates in its own reusable buffer.
      *
-     * @param product the product for which to find equal candidates
+     * @param features the features of the product for which to find equal candidates
      * @param largerEshop the e-shop class containing the substring dictionary
-     * @return a HashSet containing all probable equal products
+     * @return the sorted ids of the retained probable equal products and the number of candidates before pruning
      */
-    private static HashSet<NormalizedProduct> listEqualCandidates(NormalizedProduct product, EshopSubstrings largerEshop) {
-        HashSet<NormalizedProduct> equalCandidates = new HashSet<>();
-
-        // Assuming product.InferredData.getLowerCaseNameParts() returns List<String>
-        for (String part : product.inferredData.getLowerCaseNameParts()) {
-            if (part.length() > 2) {
-                List<NormalizedProduct> value = largerEshop.substringsToProducts.get(part);
-                if (value != null) {
-                    equalCandidates.addAll(value);
-                }
-            }
-        }
-
-        return equalCandidates;
+    public static CandidateList listEqualCandidates(ProductFeatures features, EshopSubstrings largerEshop) {
+        CandidateBuffer buffer = CANDIDATE_BUFFERS.get();
+        largerEshop.collectCandidates(features, buffer);
+        int unprunedCount = buffer.size();
+        buffer.retainBest(RuntimeConfig.candidateTopK, RuntimeConfig.minCandidateOverlapWeight);
+        return new CandidateList(buffer.toArray(), unprunedCount);
     }
 }
-
@@ -0,0 +1,210 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.sameProductEstimator.EshopSubstrings;
+import cz.cuni.mff.mbohin.sameProductEstimator.ProductCandidatesPair;
+import cz.cuni.mff.mbohin.sameProductEstimator.SimilarityCandidatePair;
+
+import java.io.Serial;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scores products of the smaller e-shop of an e-shop pair against their candidates from the larger e-shop on a shared
+ * work-stealing {@link ForkJoinPool}. The products are split recursively into ranges of at most
+ * {@link RuntimeConfig#scoringChunkSize} products, so that idle workers steal ranges of other products and of other e-shop pairs
+ * and the speedup is not capped by the number of e-shop pairs.
+ *
+ * <p>Every product is scored by a fused pass computing all similarity measures of a candidate at once into a {@link ScoreBuffer},
+ * from which the rankings by the individual measures are produced. The measures are the calculators registered in
+ * {@link SimilarityCalculatorsFactory}, evaluated cheapest-first, and measures bounded by an upper-bound filter are skipped
+ * for candidates the filter eliminates from their ranking. With {@link RuntimeConfig#cascadeScoring} enabled, the expensive
+ * measures are moreover calculated only for the candidates surviving the cheap cascade gates. The number of candidate pairs
+ * pruned by each stage is reported together with the candidate statistics.</p>
+ *
+ * <p>Finally, the candidates ranked by some measure are ranked by the {@link CombinedScorer combined score} as well, which is the
+ * input of the {@link OneToOneAssignment}.</p>
+ *
+ * <p>Candidates of a product are generated right before it is scored and dropped afterwards. The best
+ * {@link RuntimeConfig#retainedCandidatesPerRanking} candidates of every ranking are handed to the {@link ResultWriter}, which writes
+ * them to disk off the scoring threads, and only the few assignment candidates of the combined ranking are kept in the
+ * {@link RankingStore}. The heap thus holds a small, fixed number of candidates per scored product rather than all its rankings.
+ * The progress of every e-shop pair is reported on the console.</p>
+ */
+public class ProductScoringEngine {
+    private static final ForkJoinPool SCORING_POOL = new ForkJoinPool(RuntimeConfig.scoringParallelism);
+
+    private final RankingStore rankingStore;
+    private final String[] similarityTypes;
+    private final SimilarityCalculator[] calculators;
+    private final CombinedScorer combinedScorer;
+    private final ThreadLocal<ScoreBuffer> scoreBuffers;
+
+    /**
+     * Constructs a scoring engine storing its results in the given ranking store.
+     *
+     * @param rankingStore the store receiving the assignment candidates of scored products
+     */
+    public ProductScoringEngine(RankingStore rankingStore) {
+        this.rankingStore = rankingStore;
+
+        Map<String, SimilarityCalculator> calculatorsByType = SimilarityCalculatorsFactory.getSimilarityCalculators();
+        similarityTypes = calculatorsByType.keySet().toArray(String[]::new);
+        calculators = calculatorsByType.values().toArray(SimilarityCalculator[]::new);
+        combinedScorer = new CombinedScorer(similarityTypes);
+        scoreBuffers = ThreadLocal.withInitial(() -> new ScoreBuffer(calculators));
+    }
+
+    /**
+     * Returns the pool all scoring tasks run on. Coordinating tasks of several e-shop pairs may be submitted to it as well,
+     * as workers waiting for the scoring of one pair help with the scoring of the others.
+     *
+     * @return the scoring pool
+     */
+    public static ForkJoinPool pool() {
+        return SCORING_POOL;
+    }
+
+    /**
+     * Generates candidates of all given products and scores the first {@code scoreLimit} of them in parallel. Candidates of
+     * products beyond the limit are generated only to complete the candidate statistics, which are logged if requested.
+     *
+     * @param products the products of the smaller e-shop
+     * @param scoreLimit the number of leading products to be scored
+     * @param smallerEshop the e-shop with fewer products
+     * @param largerEshop the e-shop with more products
+     * @param logStatistics true to log the statistics of candidates of all given products, including the estimated recall of the candidate generator
+     */
+    public void scoreProducts(List<NormalizedProduct> products, int scoreLimit, EshopSubstrings smallerEshop, EshopSubstrings largerEshop, boolean logStatistics) {
+        String eshopPair = ProductPairingManager.eshopPairName(smallerEshop, largerEshop);
+        ScoringRun run = new ScoringRun(smallerEshop, largerEshop, eshopPair, scoreLimit, new CandidateFrequencies(),
+                new PruningStatistics(similarityTypes), new Progress(eshopPair, Math.min(scoreLimit, products.size())));
+
+        SCORING_POOL.invoke(new ScoringTask(products, 0, products.size(), run));
+
+        run.progress().reportCompletion();
+        if (logStatistics) {
+            CandidateRecall.Estimate recall = CandidateRecall.estimate(products, RuntimeConfig.candidateRecallSampleSize, smallerEshop, largerEshop, calculators, combinedScorer);
+            LoggingManager.logStatsOfCandidates(run.frequencies().frequencies(), run.frequencies().unprunedCandidatesSum(), smallerEshop, largerEshop, recall);
+            run.pruning().report(eshopPair);
+        }
+    }
+
+    /**
+     * Scores all candidates of a product by all similarity measures in one fused pass over the candidates, then enqueues for logging
+     * the best {@link RuntimeConfig#retainedCandidatesPerRanking} candidates scoring at least {@link RuntimeConfig#minRankedSimilarity}
+     * in the ranking by every measure and by the combined score. The assignment candidates of the combined ranking are stored.
+     */
+    private void scoreProduct(ProductCandidatesPair productAndCandidates, ScoringRun run) {
+        NormalizedProduct product = productAndCandidates.product();
+        ScoreBuffer buffer = scoreBuffers.get();
+        buffer.score(run.smallerEshop().featuresOf(product), productAndCandidates.candidateIds(), run.largerEshop());
+
+        for (int metric = 0; metric < similarityTypes.length; metric++) {
+            List<SimilarityCandidatePair> sortedCandidates = buffer.ranking(metric, RuntimeConfig.retainedCandidatesPerRanking, RuntimeConfig.minRankedSimilarity, run.pruning());
+            LoggingManager.logSortedCandidates(run.eshopPair(), similarityTypes[metric], product, sortedCandidates);
+        }
+
+        List<SimilarityCandidatePair> combinedCandidates = buffer.combinedRanking(combinedScorer, RuntimeConfig.retainedCandidatesPerRanking, RuntimeConfig.minRankedSimilarity);
+        LoggingManager.logSortedCandidates(run.eshopPair(), CombinedScorer.SIMILARITY_TYPE, product, combinedCandidates);
+        rankingStore.store(run.eshopPair(), product, combinedCandidates);
+    }
+
+    /**
+     * The shared state of scoring the products of one e-shop pair.
+     */
+    private record ScoringRun(EshopSubstrings smallerEshop, EshopSubstrings largerEshop, String eshopPair, int scoreLimit,
+                              CandidateFrequencies frequencies, PruningStatistics pruning, Progress progress) { }
+
+    private class ScoringTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<NormalizedProduct> products;
+        private final int from, to;
+        private final transient ScoringRun run;
+
+        ScoringTask(List<NormalizedProduct> products, int from, int to, ScoringRun run) {
+            this.products = products;
+            this.from = from;
+            this.to = to;
+            this.run = run;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > RuntimeConfig.scoringChunkSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ScoringTask(products, from, middle, run), new ScoringTask(products, middle, to, run));
+                return;
+            }
+
+            TreeMap<Integer, Integer> localFrequencies = new TreeMap<>();
+            long localUnprunedCandidatesSum = 0;
+            for (int i = from; i < to; i++) {
+                NormalizedProduct product = products.get(i);
+                ProductPairingManager.CandidateList candidates = ProductPairingManager.listEqualCandidates(run.smallerEshop().featuresOf(product), run.largerEshop());
+                localFrequencies.merge(candidates.candidateIds().length, 1, Integer::sum);
+                localUnprunedCandidatesSum += candidates.unprunedCount();
+
+                if (i < run.scoreLimit()) {
+                    scoreProduct(new ProductCandidatesPair(product, candidates.candidateIds()), run);
+                    run.progress().productScored();
+                }
+            }
+            run.frequencies().merge(localFrequencies, localUnprunedCandidatesSum);
+        }
+    }
+
+    private static class CandidateFrequencies {
+        private final TreeMap<Integer, Integer> frequencies = new TreeMap<>();
+        private long unprunedCandidatesSum;
+
+        synchronized void merge(TreeMap<Integer, Integer> localFrequencies, long localUnprunedCandidatesSum) {
+            localFrequencies.forEach((count, frequency) -> frequencies.merge(count, frequency, Integer::sum));
+            unprunedCandidatesSum += localUnprunedCandidatesSum;
+        }
+
+        synchronized TreeMap<Integer, Integer> frequencies() {
+            return frequencies;
+        }
+
+        synchronized long unprunedCandidatesSum() {
+            return unprunedCandidatesSum;
+        }
+    }
+
+    private static class Progress {
+        private final String eshopPair;
+        private final int total;
+        private final long startTime = System.nanoTime();
+        private final AtomicInteger scored = new AtomicInteger();
+
+        Progress(String eshopPair, int total) {
+            this.eshopPair = eshopPair;
+            this.total = total;
+        }
+
+        void productScored() {
+            int count = scored.incrementAndGet();
+            int interval = RuntimeConfig.scoringProgressInterval;
+            if (interval > 0 && count % interval == 0 && count < total)
+                report(count);
+        }
+
+        void reportCompletion() {
+            report(scored.get());
+        }
+
+        private void report(int count) {
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.printf("%s: scored %,d / %,d products (%.1f %%) in %.1f s, %.1f products/s%n",
+                    eshopPair, count, total, total == 0 ? 100.0 : 100.0 * count / total, seconds, seconds == 0 ? 0.0 : count / seconds);
+        }
+    }
+}
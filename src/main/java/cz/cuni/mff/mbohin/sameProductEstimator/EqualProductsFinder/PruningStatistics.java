@@ -0,0 +1,77 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts, for every similarity measure whose calculation may be skipped, how many candidate pairs each pruning stage removed
+ * before the measure was calculated. The stages are applied in order:
+ * <ol>
+ * <li>the cascade gates, which pass on only candidates scoring well by the cheap gate measures,</li>
+ * <li>the upper-bound filters, which skip candidates whose bound cannot reach the retained part of the ranking.</li>
+ * </ol>
+ * The counters are updated concurrently by all scoring workers of an e-shop pair.
+ */
+public class PruningStatistics {
+    private final String[] similarityTypes;
+    private final LongAdder[] candidatePairs;
+    private final LongAdder[] prunedByGates;
+    private final LongAdder[] prunedByBounds;
+
+    /**
+     * Constructs zeroed counters for the given similarity measures.
+     *
+     * @param similarityTypes the names of the measures, indexed as in the {@link ScoreBuffer}
+     */
+    public PruningStatistics(String[] similarityTypes) {
+        this.similarityTypes = similarityTypes;
+        this.candidatePairs = newCounters(similarityTypes.length);
+        this.prunedByGates = newCounters(similarityTypes.length);
+        this.prunedByBounds = newCounters(similarityTypes.length);
+    }
+
+    /**
+     * Records the ranking of the candidates of one product by a measure.
+     *
+     * @param metric the index of the measure
+     * @param candidates the number of candidates of the product
+     * @param gatePruned the number of candidates that did not survive the cascade gates
+     * @param boundPruned the number of surviving candidates skipped for their upper bound
+     */
+    public void record(int metric, int candidates, int gatePruned, int boundPruned) {
+        candidatePairs[metric].add(candidates);
+        prunedByGates[metric].add(gatePruned);
+        prunedByBounds[metric].add(boundPruned);
+    }
+
+    /**
+     * Prints the counters of every measure with at least one recorded candidate pair to the console.
+     *
+     * @param eshopPair the name of the e-shop pair the counters belong to
+     */
+    public void report(String eshopPair) {
+        for (int metric = 0; metric < similarityTypes.length; metric++) {
+            long total = candidatePairs[metric].sum();
+            if (total == 0)
+                continue;
+
+            long gates = prunedByGates[metric].sum();
+            long bounds = prunedByBounds[metric].sum();
+            long calculated = total - gates - bounds;
+            System.out.printf("%s %s: %,d candidate pairs, pruned %,d (%.1f %%) by cascade gates and %,d (%.1f %%) by upper bounds, calculated %,d (%.1f %%)%n",
+                    eshopPair, similarityTypes[metric], total, gates, percentage(gates, total), bounds, percentage(bounds, total),
+                    calculated, percentage(calculated, total));
+        }
+    }
+
+    private static double percentage(long part, long total) {
+        return 100.0 * part / total;
+    }
+
+    private static LongAdder[] newCounters(int count) {
+        LongAdder[] counters = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
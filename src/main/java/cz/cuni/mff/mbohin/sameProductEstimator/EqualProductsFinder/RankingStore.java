@@ -0,0 +1,174 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.sameProductEstimator.SimilarityCandidatePair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the candidates of every scored product that the {@link OneToOneAssignment} may match it with, grouped by e-shop pair.
+ * Only the best {@link RuntimeConfig#assignmentCandidatesPerProduct} candidates by the {@linkplain CombinedScorer combined score}
+ * reaching {@link RuntimeConfig#minAssignmentScore} are kept, as arrays of candidates and their scores. The rankings by the
+ * individual similarity types are only written to the {@link ResultsFile}, where {@link ResultsReader} reads them. The store allows
+ * {@link EqualProductsFinder#updateCatalogue(Eshop, List)} to reuse the results of products unaffected by a catalogue change and
+ * to drop the rankings of affected products from the results file.
+ *
+ * <p>The assignment candidates of a previous run can be restored from its {@link ResultsFile} by {@link #restore(ResultsFile, Map)}.</p>
+ *
+ * <p>E-shop pairs are identified by names formatted as "smallerEshop_to_largerEshop", the same as the output directories.
+ * Candidates of distinct e-shop pairs may be stored concurrently.</p>
+ */
+public class RankingStore {
+    /**
+     * The assignment candidates of one product, sorted by their combined score in descending order.
+     *
+     * @param product the product from the smaller e-shop
+     * @param candidates the candidates from the larger e-shop
+     * @param scores the combined scores of the candidates
+     */
+    public record AssignmentCandidates(NormalizedProduct product, NormalizedProduct[] candidates, double[] scores) { }
+
+    private final Map<String, Map<String, AssignmentCandidates>> candidatesByPair = new ConcurrentHashMap<>();
+
+    /**
+     * Stores the assignment candidates of a product taken from its ranking by the combined score. A product is stored even if
+     * none of its candidates is kept, so that it counts as scored.
+     *
+     * @param eshopPair the name of the e-shop pair
+     * @param product the product from the smaller e-shop
+     * @param combinedCandidates the candidates from the larger e-shop sorted by their combined score
+     */
+    public void store(String eshopPair, NormalizedProduct product, List<SimilarityCandidatePair> combinedCandidates) {
+        int limit = RuntimeConfig.assignmentCandidatesPerProduct > 0
+                ? Math.min(RuntimeConfig.assignmentCandidatesPerProduct, combinedCandidates.size())
+                : combinedCandidates.size();
+        int count = 0;
+        while (count < limit && combinedCandidates.get(count).similarity() >= RuntimeConfig.minAssignmentScore)
+            count++;
+
+        NormalizedProduct[] candidates = new NormalizedProduct[count];
+        double[] scores = new double[count];
+        for (int i = 0; i < count; i++) {
+            candidates[i] = combinedCandidates.get(i).candidate();
+            scores[i] = combinedCandidates.get(i).similarity();
+        }
+        candidatesByPair.computeIfAbsent(eshopPair, pair -> new ConcurrentHashMap<>())
+                .put(product.url, new AssignmentCandidates(product, candidates, scores));
+    }
+
+    /**
+     * Restores the assignment candidates from the rankings by the combined score indexed in the results file of a previous run.
+     * The products of the file are resolved by their e-shop and URL among the catalogues the rankings were computed from.
+     *
+     * @param results the results file of the previous run
+     * @param catalogues the catalogues of all e-shops the rankings were computed from
+     * @return true if all rankings were restored, false if some product of the file is missing in the catalogues
+     * @throws IOException if a ranking of the results file is damaged
+     */
+    public boolean restore(ResultsFile results, Map<Eshop, List<NormalizedProduct>> catalogues) throws IOException {
+        Map<Eshop, Map<String, NormalizedProduct>> productsByUrl = new EnumMap<>(Eshop.class);
+        catalogues.forEach((eshop, products) -> {
+            Map<String, NormalizedProduct> byUrl = new HashMap<>();
+            for (NormalizedProduct product : products)
+                byUrl.put(product.url, product);
+            productsByUrl.put(eshop, byUrl);
+        });
+
+        NormalizedProduct[] products = new NormalizedProduct[results.productCount()];
+        for (int id = 0; id < products.length; id++) {
+            ResultsFile.Product product = results.product(id);
+            products[id] = productsByUrl.getOrDefault(product.eshop(), Map.of()).get(product.url());
+        }
+
+        for (int id = 0; id < products.length; id++) {
+            for (ResultsFile.Ranking ranking : results.rankings(id, CombinedScorer.SIMILARITY_TYPE)) {
+                if (products[id] == null)
+                    return false;
+                List<SimilarityCandidatePair> sortedCandidates = new ArrayList<>(ranking.candidateIds().length);
+                for (int i = 0; i < ranking.candidateIds().length; i++) {
+                    NormalizedProduct candidate = products[ranking.candidateIds()[i]];
+                    if (candidate == null)
+                        return false;
+                    sortedCandidates.add(new SimilarityCandidatePair(ranking.similarities()[i], candidate));
+                }
+                store(ranking.eshopPair(), products[id], sortedCandidates);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the assignment candidates of all products scored within the specified e-shop pair.
+     *
+     * @param eshopPair the name of the e-shop pair
+     * @return the stored candidates, empty if the pair has not been scored
+     */
+    public Collection<AssignmentCandidates> candidatesOf(String eshopPair) {
+        return candidatesByPair.getOrDefault(eshopPair, Map.of()).values();
+    }
+
+    /**
+     * Determines whether a product with the given URL has been scored within the specified e-shop pair.
+     *
+     * @param eshopPair the name of the e-shop pair
+     * @param url the URL of the product
+     * @return true if the product has been scored, false otherwise
+     */
+    public boolean contains(String eshopPair, String url) {
+        return candidatesByPair.getOrDefault(eshopPair, Map.of()).containsKey(url);
+    }
+
+    /**
+     * Removes the candidates of a product from the specified e-shop pair and its rankings from the index of the results file.
+     *
+     * @param eshopPair the name of the e-shop pair
+     * @param url the URL of the product
+     */
+    public void discard(String eshopPair, String url) {
+        AssignmentCandidates candidates = candidatesByPair.getOrDefault(eshopPair, Map.of()).remove(url);
+        if (candidates != null)
+            LoggingManager.discardSortedCandidates(eshopPair, candidates.product());
+    }
+
+    /**
+     * Removes all candidates of the specified e-shop pair and its rankings from the index of the results file.
+     *
+     * @param eshopPair the name of the e-shop pair
+     */
+    public void discardPair(String eshopPair) {
+        candidatesByPair.remove(eshopPair);
+        LoggingManager.discardSortedCandidatesOf(eshopPair);
+    }
+
+    /**
+     * Replaces references to outdated product versions by their current versions, both as ranked products and as candidates.
+     * Used for products whose attributes changed without affecting their similarity scores.
+     *
+     * @param eshopPair the name of the e-shop pair
+     * @param replacements a map from the outdated product versions to their current versions
+     */
+    public void replaceProducts(String eshopPair, Map<NormalizedProduct, NormalizedProduct> replacements) {
+        Map<String, AssignmentCandidates> candidatesOfPair = candidatesByPair.get(eshopPair);
+        if (candidatesOfPair == null || replacements.isEmpty())
+            return;
+
+        for (Map.Entry<String, AssignmentCandidates> entry : candidatesOfPair.entrySet()) {
+            AssignmentCandidates candidates = entry.getValue();
+            NormalizedProduct product = replacements.getOrDefault(candidates.product(), candidates.product());
+
+            NormalizedProduct[] replaced = candidates.candidates().clone();
+            for (int i = 0; i < replaced.length; i++)
+                replaced[i] = replacements.getOrDefault(replaced[i], replaced[i]);
+            entry.setValue(new AssignmentCandidates(product, replaced, candidates.scores()));
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.sameProductEstimator.SimilarityCandidatePair;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A dedicated writer stage of the rankings of scored products. Scoring threads only enqueue rankings into a bounded queue,
+ * a single writer thread drains the queue in batches, encodes the rankings and appends them through one buffer to the single
+ * binary {@link ResultsFile} of the run. Every product, whether ranked or a candidate, is assigned an id in the file, and the
+ * offsets of the records of every ranked product are kept in an index, which is written into the footer of the file together
+ * with the products. This replaces creating a text file per product and similarity type on the scoring threads.
+ *
+ * <p>Products are identified by their e-shop and URL, so that versions of a product changed by a catalogue update share their id,
+ * and the footer holds the latest version. The file is truncated when it is first written in a run or after {@link #reset()},
+ * unless {@link #resume()} continues the file written by a previous run, keeping its products and index.
+ * A product ranked again within an e-shop pair and similarity type is indexed by its latest record, and rankings may be dropped
+ * from the index by {@link #discard(String, NormalizedProduct)} and {@link #discardPair(String)}. Records dropped from the index
+ * stay in the file until it is reset or compacted. A resumed file is compacted once the records dropped from the index take
+ * at least {@link RuntimeConfig#resultsCompactionThreshold} of its records: it is rewritten with only the indexed records and the
+ * products they refer to, so a file resumed by every run does not grow without bound.</p>
+ *
+ * <p>When the queue is full, the enqueuing scoring thread waits for the writer as a {@link ForkJoinPool.ManagedBlocker},
+ * so the scoring pool compensates by activating a spare worker, and scoring threads never perform any file I/O themselves.
+ * {@link #flush()} waits until all previously enqueued rankings are written and writes the footer, so the file is complete.
+ * Rankings written afterwards overwrite the footer, which is written again by the next flush.</p>
+ *
+ * <p>An error while writing or encoding a ranking does not stop the writer thread. The writer is marked as failed, see
+ * {@link #hasFailed()}, it keeps draining the queue without writing, and flushes still return, so scoring threads never wait forever.</p>
+ */
+public class ResultWriter {
+    private static final Logger LOGGER = Logger.getLogger("ResultWriter logger");
+
+    private final Path path;
+    private final BlockingQueue<Task> queue = new ArrayBlockingQueue<>(RuntimeConfig.resultWriterQueueCapacity);
+
+    private FileChannel channel;
+    private volatile boolean failed;
+    private volatile boolean dropped;
+    private final ByteBuffer buffer = ByteBuffer.allocate(RuntimeConfig.resultWriterBufferSize);
+    private long bufferPosition;
+    private final Map<String, Integer> eshopPairIds = new HashMap<>();
+    private final Map<String, Integer> similarityTypeIds = new HashMap<>();
+    private final Map<String, Integer> productIds = new HashMap<>();
+    private final List<ResultsFile.Product> products = new ArrayList<>();
+    private final List<List<IndexEntry>> index = new ArrayList<>();
+
+    private sealed interface Task permits Ranking, Discard, Reset, Resume, Flush { }
+
+    private record Ranking(String eshopPair, String similarityType, NormalizedProduct product, List<SimilarityCandidatePair> candidates) implements Task { }
+
+    private record Discard(String eshopPair, NormalizedProduct product) implements Task { }
+
+    private record Reset() implements Task { }
+
+    private record Resume() implements Task { }
+
+    private record Flush(CountDownLatch done) implements Task { }
+
+    private record IndexEntry(int eshopPairId, int similarityTypeId, long offset) { }
+
+    /**
+     * Constructs a writer storing the rankings in the specified results file and starts its writer thread.
+     *
+     * @param path the path of the results file
+     */
+    public ResultWriter(Path path) {
+        this.path = path;
+        Thread thread = new Thread(this::run, "result-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Enqueues the ranking of a product to be written. Returns immediately unless the queue is full.
+     *
+     * @param eshopPair the name of the e-shop pair
+     * @param similarityType the similarity type by which the candidates are sorted
+     * @param product the reference product from the smaller e-shop
+     * @param sortedCandidates the candidates from the larger e-shop, sorted by the similarity type
+     */
+    public void write(String eshopPair, String similarityType, NormalizedProduct product, List<SimilarityCandidatePair> sortedCandidates) {
+        enqueue(new Ranking(eshopPair, similarityType, product, sortedCandidates));
+    }
+
+    /**
+     * Enqueues dropping the rankings of a product within an e-shop pair from the index.
+     *
+     * @param eshopPair the name of the e-shop pair
+     * @param product the product from the smaller e-shop
+     */
+    public void discard(String eshopPair, NormalizedProduct product) {
+        enqueue(new Discard(eshopPair, product));
+    }
+
+    /**
+     * Enqueues dropping all rankings of an e-shop pair from the index. Rankings of the pair enqueued afterwards are indexed again.
+     *
+     * @param eshopPair the name of the e-shop pair
+     */
+    public void discardPair(String eshopPair) {
+        enqueue(new Discard(eshopPair, null));
+    }
+
+    /**
+     * Enqueues deleting the results file and all rankings written so far, the next ranking starts a new file.
+     */
+    public void reset() {
+        dropped = false;
+        enqueue(new Reset());
+    }
+
+    /**
+     * Enqueues continuing the results file written by a previous run instead of truncating it. The products and the index
+     * are read from its footer and further records are appended in place of the footer. Must be enqueued before any ranking
+     * of the run. If the file can not be read, the writer fails as on any other I/O error.
+     */
+    public void resume() {
+        dropped = false;
+        enqueue(new Resume());
+    }
+
+    /**
+     * Determines whether writing has failed since the last reset, or a task could not be enqueued because the enqueuing thread
+     * was interrupted, in which case the results file misses some rankings.
+     *
+     * @return true if some rankings have been dropped
+     */
+    public boolean hasFailed() {
+        return failed || dropped;
+    }
+
+    /**
+     * Waits until all rankings enqueued before this call are written and the footer of the results file is up to date.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        enqueue(new Flush(done));
+        done.await();
+    }
+
+    private void enqueue(Task task) {
+        if (queue.offer(task))
+            return;
+
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                private boolean enqueued;
+
+                @Override
+                public boolean block() throws InterruptedException {
+                    if (!enqueued) {
+                        queue.put(task);
+                        enqueued = true;
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return enqueued || (enqueued = queue.offer(task));
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped = true;
+            LOGGER.log(Level.WARNING, "Interrupted while enqueuing a result, it is not written and the results file is incomplete");
+        }
+    }
+
+    private void run() {
+        List<Task> batch = new ArrayList<>(RuntimeConfig.resultWriterBatchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, RuntimeConfig.resultWriterBatchSize - 1);
+
+            for (Task task : batch) {
+                try {
+                    if (task instanceof Ranking ranking) {
+                        writeRanking(ranking);
+                    } else if (task instanceof Discard discard) {
+                        dropFromIndex(discard.eshopPair(), discard.product());
+                    } else if (task instanceof Reset) {
+                        deleteResults();
+                    } else if (task instanceof Resume) {
+                        resumeResults();
+                    } else if (task instanceof Flush) {
+                        writeFooter();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "An error occurred while writing results to " + path + ", further results are dropped until reset", e);
+                    failed = true;
+                    closeChannel();
+                } finally {
+                    if (task instanceof Flush flush)
+                        flush.done().countDown();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeRanking(Ranking ranking) throws IOException {
+        if (failed)
+            return;
+        ensureOpen();
+
+        int eshopPairId = eshopPairIds.computeIfAbsent(ranking.eshopPair(), pair -> eshopPairIds.size());
+        int similarityTypeId = similarityTypeIds.computeIfAbsent(ranking.similarityType(), type -> similarityTypeIds.size());
+        int productId = productId(ranking.product());
+        List<SimilarityCandidatePair> candidates = ranking.candidates();
+
+        int[] candidateIds = new int[candidates.size()];
+        double[] similarities = new double[candidates.size()];
+        for (int i = 0; i < candidateIds.length; i++) {
+            candidateIds[i] = productId(candidates.get(i).candidate());
+            similarities[i] = candidates.get(i).similarity();
+        }
+        long offset = appendRecord(eshopPairId, similarityTypeId, productId, candidateIds, similarities);
+
+        List<IndexEntry> entries = index.get(productId);
+        entries.removeIf(entry -> entry.eshopPairId() == eshopPairId && entry.similarityTypeId() == similarityTypeId);
+        entries.add(new IndexEntry(eshopPairId, similarityTypeId, offset));
+    }
+
+    /**
+     * Encodes a ranking record and appends it through the shared buffer.
+     *
+     * @return the offset of the record in the file
+     */
+    private long appendRecord(int eshopPairId, int similarityTypeId, int productId, int[] candidateIds, double[] similarities) throws IOException {
+        int recordSize = ResultsFile.RECORD_HEADER_SIZE + candidateIds.length * ResultsFile.CANDIDATE_SIZE;
+        ByteBuffer record = reserve(recordSize);
+        long offset = bufferPosition + (record == buffer ? buffer.position() : 0);
+        record.putInt(eshopPairId).putInt(similarityTypeId).putInt(productId).putInt(candidateIds.length);
+        for (int candidateId : candidateIds)
+            record.putInt(candidateId);
+        for (double similarity : similarities)
+            record.putDouble(similarity);
+        if (record != buffer) {
+            writeFully(record.flip(), offset);
+            bufferPosition += recordSize;
+        }
+        return offset;
+    }
+
+    private int productId(NormalizedProduct product) {
+        Integer id = productIds.get(productKey(product));
+        if (id == null) {
+            id = products.size();
+            productIds.put(productKey(product), id);
+            products.add(new ResultsFile.Product(product.eshop, product.name, product.url));
+            index.add(new ArrayList<>(0));
+        } else if (!product.name.equals(products.get(id).name())) {
+            products.set(id, new ResultsFile.Product(product.eshop, product.name, product.url));
+        }
+        return id;
+    }
+
+    private static String productKey(NormalizedProduct product) {
+        return productKey(product.eshop, product.url);
+    }
+
+    private static String productKey(Eshop eshop, String url) {
+        return eshop + " " + url;
+    }
+
+    /**
+     * Returns the shared buffer with room for a record of the specified size, writing out the buffered records if necessary.
+     * A record larger than the buffer gets a buffer of its own, which is written by the caller right after the buffered records,
+     * so the caller also advances the position of the shared buffer past it.
+     */
+    private ByteBuffer reserve(int size) throws IOException {
+        if (buffer.remaining() < size)
+            drainBuffer();
+        return size <= buffer.capacity() ? buffer : ByteBuffer.allocate(size);
+    }
+
+    private void drainBuffer() throws IOException {
+        int size = buffer.position();
+        writeFully(buffer.flip(), bufferPosition);
+        buffer.clear();
+        bufferPosition += size;
+    }
+
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining())
+            position += channel.write(source, position);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel != null)
+            return;
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        clearState();
+        buffer.putInt(ResultsFile.MAGIC).putInt(ResultsFile.FORMAT_VERSION);
+    }
+
+    /**
+     * Writes out the buffered records followed by the footer and the trailer, then rewinds the write position to the start
+     * of the footer, so that further records overwrite it.
+     */
+    private void writeFooter() throws IOException {
+        if (failed || channel == null)
+            return;
+
+        drainBuffer();
+        long footerOffset = bufferPosition;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeNames(out, eshopPairIds);
+            writeNames(out, similarityTypeIds);
+            out.writeInt(products.size());
+            for (int id = 0; id < products.size(); id++) {
+                ResultsFile.Product product = products.get(id);
+                out.writeByte(product.eshop().ordinal());
+                ResultsFile.writeString(out, product.name());
+                ResultsFile.writeString(out, product.url());
+                List<IndexEntry> entries = index.get(id);
+                out.writeInt(entries.size());
+                for (IndexEntry entry : entries)
+                    out.writeLong(entry.offset());
+            }
+            out.writeLong(footerOffset);
+            out.writeInt(ResultsFile.MAGIC);
+        }
+        writeFully(ByteBuffer.wrap(bytes.toByteArray()), footerOffset);
+        channel.truncate(footerOffset + bytes.size());
+    }
+
+    private static void writeNames(DataOutputStream out, Map<String, Integer> ids) throws IOException {
+        String[] names = new String[ids.size()];
+        ids.forEach((name, id) -> names[id] = name);
+        out.writeInt(names.length);
+        for (String name : names)
+            ResultsFile.writeString(out, name);
+    }
+
+    /**
+     * Drops the index entries of an e-shop pair, either of one product or of all products if the product is null.
+     */
+    private void dropFromIndex(String eshopPair, NormalizedProduct product) {
+        Integer eshopPairId = eshopPairIds.get(eshopPair);
+        if (eshopPairId == null)
+            return;
+
+        if (product == null) {
+            for (List<IndexEntry> entries : index)
+                entries.removeIf(entry -> entry.eshopPairId() == eshopPairId);
+            return;
+        }
+        Integer productId = productIds.get(productKey(product));
+        if (productId != null)
+            index.get(productId).removeIf(entry -> entry.eshopPairId() == eshopPairId);
+    }
+
+    private void deleteResults() throws IOException {
+        closeChannel();
+        clearState();
+        failed = false;
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Reopens the results file of a previous run without truncating it and restores the products and the index from its footer.
+     * If the records dropped from the index take at least {@link RuntimeConfig#resultsCompactionThreshold} of the records, the file
+     * is compacted instead.
+     */
+    private void resumeResults() throws IOException {
+        closeChannel();
+        clearState();
+        failed = false;
+
+        ResultsFile results = ResultsFile.open(path);
+        for (String eshopPair : results.eshopPairs())
+            eshopPairIds.put(eshopPair, eshopPairIds.size());
+        for (String similarityType : results.similarityTypes())
+            similarityTypeIds.put(similarityType, similarityTypeIds.size());
+
+        long recordBytes = results.footerOffset() - ResultsFile.HEADER_SIZE;
+        long indexedBytes = 0;
+        for (int id = 0; id < results.productCount(); id++) {
+            for (long offset : results.recordOffsets(id))
+                indexedBytes += results.recordSize(offset);
+        }
+        if (recordBytes > 0 && recordBytes - indexedBytes >= RuntimeConfig.resultsCompactionThreshold * recordBytes) {
+            compactResults(results);
+            LOGGER.log(Level.INFO, "Compacted results file " + path + " from " + recordBytes + " to " + indexedBytes + " bytes of records");
+            return;
+        }
+
+        for (int id = 0; id < results.productCount(); id++) {
+            ResultsFile.Product product = results.product(id);
+            productIds.put(productKey(product.eshop(), product.url()), id);
+            products.add(product);
+            List<IndexEntry> entries = new ArrayList<>();
+            for (long offset : results.recordOffsets(id))
+                entries.add(new IndexEntry(results.eshopPairIdAt(offset), results.similarityTypeIdAt(offset), offset));
+            index.add(entries);
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        bufferPosition = results.footerOffset();
+    }
+
+    /**
+     * Rewrites the results file of a previous run with only its indexed records and the products they refer to, which get new ids.
+     * The compacted file is written through a temporary file with its footer and atomically moved in place, so the file of
+     * the previous run stays intact if compaction fails. The writer then continues the compacted file.
+     */
+    private void compactResults(ResultsFile results) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(ResultsFile.MAGIC).putInt(ResultsFile.FORMAT_VERSION);
+
+            int[] compactedIds = new int[results.productCount()];
+            Arrays.fill(compactedIds, -1);
+            for (int id = 0; id < results.productCount(); id++) {
+                for (long offset : results.recordOffsets(id)) {
+                    ResultsFile.Ranking ranking = results.ranking(offset);
+                    int productId = compactedId(ranking.productId(), results, compactedIds);
+                    int[] candidateIds = new int[ranking.candidateIds().length];
+                    for (int i = 0; i < candidateIds.length; i++)
+                        candidateIds[i] = compactedId(ranking.candidateIds()[i], results, compactedIds);
+
+                    int eshopPairId = eshopPairIds.get(ranking.eshopPair());
+                    int similarityTypeId = similarityTypeIds.get(ranking.similarityType());
+                    long compactedOffset = appendRecord(eshopPairId, similarityTypeId, productId, candidateIds, ranking.similarities());
+                    index.get(productId).add(new IndexEntry(eshopPairId, similarityTypeId, compactedOffset));
+                }
+            }
+            writeFooter();
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            closeChannel();
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the id of a product of the results file being compacted in the compacted file, assigning a new id on first use.
+     */
+    private int compactedId(int id, ResultsFile results, int[] compactedIds) {
+        if (compactedIds[id] < 0) {
+            ResultsFile.Product product = results.product(id);
+            compactedIds[id] = products.size();
+            productIds.put(productKey(product.eshop(), product.url()), compactedIds[id]);
+            products.add(product);
+            index.add(new ArrayList<>());
+        }
+        return compactedIds[id];
+    }
+
+    private void clearState() {
+        buffer.clear();
+        bufferPosition = 0;
+        eshopPairIds.clear();
+        similarityTypeIds.clear();
+        productIds.clear();
+        products.clear();
+        index.clear();
+    }
+
+    private void closeChannel() {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close results file " + path, e);
+        }
+        channel = null;
+    }
+}
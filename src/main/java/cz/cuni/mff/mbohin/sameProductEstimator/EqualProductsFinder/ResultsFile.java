@@ -0,0 +1,330 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.Eshop;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the binary results file written by {@link ResultWriter}, holding the rankings of all products scored in one run.
+ * Instead of a text file per product and similarity type, the rankings are stored as compact records in a single file,
+ * which is found through an offset index keyed by product id, so the ranking of any product is read without listing or
+ * opening other files.
+ *
+ * <p>Layout: magic and format version, followed by the ranking records, the footer and the trailer. A record holds the ids
+ * of the e-shop pair, similarity type and product, the number of candidates, the product ids of the candidates and their
+ * similarities as doubles. The footer lists the names of the e-shop pairs and similarity types, the products indexed by their
+ * ids, each with its e-shop, name, URL and the offsets of its current records. The trailer holds the offset of the footer
+ * and the magic again. Strings are stored as a length prefixed UTF-8 byte sequence, where the length -1 stands for null.
+ * Records superseded by a catalogue update stay in the file, but they are no longer indexed, until {@link ResultWriter} compacts
+ * the file when resuming it.</p>
+ *
+ * <p>The file is read through a memory mapped buffer. A record is decoded only when the rankings of its product are requested.
+ * The footer and the headers of the indexed records are validated when the file is opened, the candidates of a record when it is
+ * decoded, so that a damaged file is reported by an {@link IOException} instead of an arbitrary exception.</p>
+ */
+public class ResultsFile {
+    static final int MAGIC = 0x52534C54; // "RSLT"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 2 * Integer.BYTES;
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+    static final int RECORD_HEADER_SIZE = 4 * Integer.BYTES;
+    static final int CANDIDATE_SIZE = Integer.BYTES + Double.BYTES;
+
+    /**
+     * A product referenced by the results file.
+     *
+     * @param eshop the e-shop of the product
+     * @param name the name of the product
+     * @param url the URL of the product
+     */
+    public record Product(Eshop eshop, String name, String url) { }
+
+    /**
+     * The ranking of the candidates of one product by one similarity type.
+     *
+     * @param eshopPair the name of the e-shop pair, formatted as "smallerEshop_to_largerEshop"
+     * @param similarityType the similarity type by which the candidates are sorted
+     * @param productId the id of the product from the smaller e-shop
+     * @param candidateIds the ids of the candidates from the larger e-shop, sorted by similarity
+     * @param similarities the similarities of the candidates
+     */
+    public record Ranking(String eshopPair, String similarityType, int productId, int[] candidateIds, double[] similarities) { }
+
+    private final ByteBuffer buffer;
+    private long footerOffset;
+    private final List<String> eshopPairs = new ArrayList<>();
+    private final List<String> similarityTypes = new ArrayList<>();
+    private final List<Product> products = new ArrayList<>();
+    private final List<long[]> recordOffsets = new ArrayList<>();
+
+    private ResultsFile(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens a results file and reads its footer.
+     *
+     * @param path the path of the results file
+     * @return the opened results file
+     * @throws IOException if the file can not be read, is not a results file or is damaged
+     */
+    public static ResultsFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE || channel.size() < HEADER_SIZE + TRAILER_SIZE)
+                throw new IOException("Unsupported size of results file " + path);
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != FORMAT_VERSION || buffer.getInt(buffer.limit() - Integer.BYTES) != MAGIC)
+                throw new IOException("Not a results file of the current format: " + path);
+
+            ResultsFile results = new ResultsFile(buffer);
+            try {
+                long footerOffset = buffer.getLong(buffer.limit() - TRAILER_SIZE);
+                if (footerOffset < HEADER_SIZE || footerOffset > buffer.limit() - TRAILER_SIZE)
+                    throw new IOException("Invalid footer offset " + footerOffset);
+                results.footerOffset = footerOffset;
+                results.readFooter(buffer.duplicate().position((int) footerOffset).limit(buffer.limit() - TRAILER_SIZE));
+                for (int id = 0; id < results.productCount(); id++) {
+                    for (long offset : results.recordOffsets.get(id))
+                        results.checkRecord(offset, id);
+                }
+            } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Damaged results file " + path, e);
+            }
+            return results;
+        }
+    }
+
+    private void readFooter(ByteBuffer footer) throws IOException {
+        int pairCount = checkCount(footer.getInt(), Integer.BYTES, footer);
+        for (int i = 0; i < pairCount; i++)
+            eshopPairs.add(readString(footer));
+        int typeCount = checkCount(footer.getInt(), Integer.BYTES, footer);
+        for (int i = 0; i < typeCount; i++)
+            similarityTypes.add(readString(footer));
+
+        int productCount = checkCount(footer.getInt(), 1 + 3 * Integer.BYTES, footer);
+        Eshop[] eshops = Eshop.values();
+        for (int i = 0; i < productCount; i++) {
+            byte eshop = footer.get();
+            if (eshop < 0 || eshop >= eshops.length)
+                throw new IOException("Invalid e-shop " + eshop + " of product " + i);
+            String name = readString(footer);
+            String url = readString(footer);
+            products.add(new Product(eshops[eshop], name, url));
+
+            long[] offsets = new long[checkCount(footer.getInt(), Long.BYTES, footer)];
+            for (int j = 0; j < offsets.length; j++)
+                offsets[j] = footer.getLong();
+            recordOffsets.add(offsets);
+        }
+        if (footer.hasRemaining())
+            throw new IOException(footer.remaining() + " unexpected bytes at the end of the footer");
+    }
+
+    /**
+     * Checks the header of an indexed record: the record lies between the file header and the footer, it belongs to the product
+     * indexing it, and its e-shop pair and similarity type are listed in the footer.
+     */
+    private void checkRecord(long offset, int productId) throws IOException {
+        if (offset < HEADER_SIZE || offset > footerOffset - RECORD_HEADER_SIZE)
+            throw new IOException("Invalid offset " + offset + " of a record of product " + productId);
+
+        ByteBuffer record = buffer.duplicate().position((int) offset);
+        int eshopPairId = record.getInt();
+        int similarityTypeId = record.getInt();
+        if (eshopPairId < 0 || eshopPairId >= eshopPairs.size() || similarityTypeId < 0 || similarityTypeId >= similarityTypes.size())
+            throw new IOException("Invalid e-shop pair " + eshopPairId + " or similarity type " + similarityTypeId + " in the record at offset " + offset);
+        if (record.getInt() != productId)
+            throw new IOException("The record at offset " + offset + " does not belong to product " + productId);
+        int count = record.getInt();
+        if (count < 0 || count > (footerOffset - record.position()) / CANDIDATE_SIZE)
+            throw new IOException("Invalid candidate count " + count + " in the record at offset " + offset);
+    }
+
+    /**
+     * Checks a count read from the buffer before anything is allocated for it, every counted item takes at least the specified
+     * number of bytes.
+     */
+    private static int checkCount(int count, int minItemSize, ByteBuffer buffer) throws IOException {
+        if (count < 0 || count > buffer.remaining() / minItemSize)
+            throw new IOException("Invalid count " + count + " with " + buffer.remaining() + " bytes remaining at position " + buffer.position());
+        return count;
+    }
+
+    /**
+     * Returns the number of products in the file, their ids range from 0 to this number.
+     *
+     * @return the number of products
+     */
+    public int productCount() {
+        return products.size();
+    }
+
+    /**
+     * Returns a product by its id.
+     *
+     * @param productId the id of the product
+     * @return the product
+     */
+    public Product product(int productId) {
+        return products.get(productId);
+    }
+
+    /**
+     * Returns the ids of the products whose name contains the specified text, ignoring case.
+     *
+     * @param text the text searched for
+     * @return the ids of the matching products in increasing order
+     */
+    public List<Integer> findProducts(String text) {
+        String lowerCaseText = text.toLowerCase(Locale.ROOT);
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < products.size(); id++) {
+            String name = products.get(id).name();
+            if (name != null && name.toLowerCase(Locale.ROOT).contains(lowerCaseText))
+                ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the names of the similarity types occurring in the file.
+     *
+     * @return the similarity types
+     */
+    public List<String> similarityTypes() {
+        return similarityTypes;
+    }
+
+    /**
+     * Returns the names of the e-shop pairs occurring in the file.
+     *
+     * @return the e-shop pairs
+     */
+    public List<String> eshopPairs() {
+        return eshopPairs;
+    }
+
+    /**
+     * Reads the current rankings of a product by all similarity types, in the order they were written.
+     *
+     * @param productId the id of the product
+     * @return the rankings, empty if the product was only ranked as a candidate
+     * @throws IOException if a ranking refers to a candidate that is not in the file
+     */
+    public List<Ranking> rankings(int productId) throws IOException {
+        long[] offsets = recordOffsets.get(productId);
+        List<Ranking> rankings = new ArrayList<>(offsets.length);
+        for (long offset : offsets)
+            rankings.add(readRanking(offset));
+        return rankings;
+    }
+
+    /**
+     * Reads the current rankings of a product by one similarity type, the records of other types are not decoded.
+     *
+     * @param productId the id of the product
+     * @param similarityType the similarity type of the requested rankings
+     * @return the rankings, at most one per e-shop pair, empty if the product was not ranked by the similarity type
+     * @throws IOException if a ranking refers to a candidate that is not in the file
+     */
+    public List<Ranking> rankings(int productId, String similarityType) throws IOException {
+        int similarityTypeId = similarityTypes.indexOf(similarityType);
+        List<Ranking> rankings = new ArrayList<>();
+        for (long offset : recordOffsets.get(productId)) {
+            if (similarityTypeIdAt(offset) == similarityTypeId)
+                rankings.add(readRanking(offset));
+        }
+        return rankings;
+    }
+
+    /**
+     * Returns the offset of the footer, which is where {@link ResultWriter} appends further records when resuming the file.
+     */
+    long footerOffset() {
+        return footerOffset;
+    }
+
+    /**
+     * Returns the offsets of the current records of a product.
+     */
+    long[] recordOffsets(int productId) {
+        return recordOffsets.get(productId);
+    }
+
+    /**
+     * Returns the size in bytes of the record at the specified offset.
+     */
+    int recordSize(long offset) {
+        return RECORD_HEADER_SIZE + buffer.getInt((int) offset + 3 * Integer.BYTES) * CANDIDATE_SIZE;
+    }
+
+    /**
+     * Reads the record at the specified offset.
+     */
+    Ranking ranking(long offset) throws IOException {
+        return readRanking(offset);
+    }
+
+    /**
+     * Returns the id of the e-shop pair of the record at the specified offset.
+     */
+    int eshopPairIdAt(long offset) {
+        return buffer.getInt((int) offset);
+    }
+
+    /**
+     * Returns the id of the similarity type of the record at the specified offset.
+     */
+    int similarityTypeIdAt(long offset) {
+        return buffer.getInt((int) offset + Integer.BYTES);
+    }
+
+    private Ranking readRanking(long offset) throws IOException {
+        ByteBuffer record = buffer.duplicate().position((int) offset);
+        String eshopPair = eshopPairs.get(record.getInt());
+        String similarityType = similarityTypes.get(record.getInt());
+        int productId = record.getInt();
+        int count = record.getInt();
+        int[] candidateIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            candidateIds[i] = record.getInt();
+            if (candidateIds[i] < 0 || candidateIds[i] >= products.size())
+                throw new IOException("Damaged results file: invalid candidate " + candidateIds[i] + " in the record at offset " + offset);
+        }
+        double[] similarities = new double[count];
+        for (int i = 0; i < count; i++)
+            similarities[i] = record.getDouble();
+        return new Ranking(eshopPair, similarityType, productId, candidateIds, similarities);
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length == -1)
+            return null;
+        byte[] bytes = new byte[checkCount(length, 1, buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,115 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * A command line reader of the {@link ResultsFile} written by a run of {@link EqualProductsFinder}. It prints the rankings
+ * of a product in the text format formerly written into a file per product and similarity type.
+ *
+ * <p>Usage: {@code ResultsReader <resultsFile> [productId | name] [similarityType]}</p>
+ * <ul>
+ * <li>Without a product, the e-shop pairs, similarity types and the number of products of the file are printed.</li>
+ * <li>With a product id, the rankings of the product are printed, optionally only by the given similarity type.</li>
+ * <li>With any other text, the ids, e-shops, names and URLs of the products whose name contains the text are listed.
+ * If exactly one product matches, its rankings are printed as well.</li>
+ * </ul>
+ */
+public class ResultsReader {
+    /**
+     * The entry point of the reader.
+     *
+     * @param args the path of the results file, optionally followed by a product id or a part of a product name and a similarity type
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            System.out.println("Usage: ResultsReader <resultsFile> [productId | name] [similarityType]");
+            System.exit(2);
+        }
+
+        ResultsFile results;
+        try {
+            results = ResultsFile.open(Paths.get(args[0]));
+        } catch (IOException e) {
+            System.out.println("Failed to open results file " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        if (args.length == 1) {
+            printSummary(results, args[0]);
+            return;
+        }
+
+        String similarityType = args.length == 3 ? args[2] : null;
+        List<Integer> productIds = parseProductId(args[1], results);
+        if (productIds.size() == 1) {
+            try {
+                printRankings(results, productIds.getFirst(), similarityType);
+            } catch (IOException e) {
+                System.out.println("Failed to read rankings of product " + productIds.getFirst() + ": " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        for (int productId : productIds) {
+            ResultsFile.Product product = results.product(productId);
+            System.out.println(productId + "\t" + product.eshop() + "\t" + product.name() + "\t" + product.url());
+        }
+        System.out.println(productIds.size() + " products match \"" + args[1] + "\".");
+    }
+
+    private static List<Integer> parseProductId(String argument, ResultsFile results) {
+        try {
+            int productId = Integer.parseInt(argument);
+            if (productId >= 0 && productId < results.productCount())
+                return List.of(productId);
+        } catch (NumberFormatException e) {
+            // not an id, searched as a part of a name
+        }
+        return results.findProducts(argument);
+    }
+
+    private static void printSummary(ResultsFile results, String path) {
+        System.out.println("Results file " + path + " holds " + results.productCount() + " products.");
+        System.out.println("E-shop pairs: " + String.join(", ", results.eshopPairs()));
+        System.out.println("Similarity types: " + String.join(", ", results.similarityTypes()));
+    }
+
+    private static void printRankings(ResultsFile results, int productId, String similarityType) throws IOException {
+        ResultsFile.Product product = results.product(productId);
+        List<ResultsFile.Ranking> rankings = results.rankings(productId);
+        if (rankings.isEmpty())
+            System.out.println("Product " + productId + " " + product.name() + " has not been ranked, it is only a candidate.");
+
+        StringBuilder sb = new StringBuilder();
+        for (ResultsFile.Ranking ranking : rankings) {
+            if (similarityType != null && !similarityType.equals(ranking.similarityType()))
+                continue;
+
+            sb.append("== ").append(ranking.eshopPair()).append(" / ").append(ranking.similarityType()).append('\n');
+            sb.append("Equal candidates of ").append(product.name()).append(", to be found at url: ").append(product.url()).append('\n');
+            for (int i = 0; i < ranking.candidateIds().length; i++) {
+                ResultsFile.Product candidate = results.product(ranking.candidateIds()[i]);
+                appendSimilarity(sb, ranking.similarities()[i]);
+                sb.append('\t').append(candidate.name()).append('\t').append(candidate.url()).append('\n');
+            }
+        }
+        System.out.print(sb);
+    }
+
+    /**
+     * Appends a similarity rounded half up to four decimal places, the same as {@code String.format("%.4f", similarity)}
+     * in an English locale.
+     */
+    private static void appendSimilarity(StringBuilder sb, double similarity) {
+        if (Double.isFinite(similarity))
+            sb.append(BigDecimal.valueOf(similarity).setScale(4, RoundingMode.HALF_UP).toPlainString());
+        else
+            sb.append(similarity);
+    }
+}
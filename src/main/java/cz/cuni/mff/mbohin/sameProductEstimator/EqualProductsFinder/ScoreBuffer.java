@@ -0,0 +1,319 @@
+package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.sameProductEstimator.EshopSubstrings;
+import cz.cuni.mff.mbohin.sameProductEstimator.ProductFeatures;
+import cz.cuni.mff.mbohin.sameProductEstimator.SimilarityCandidatePair;
+import cz.cuni.mff.mbohin.sameProductEstimator.TopScoredIds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A reusable struct-of-arrays buffer holding the scores of all candidates of one product by all similarity measures.
+ * The candidates are visited in a single fused pass: the features of each candidate are loaded once and passed to every
+ * calculator while they are hot in cache, and the scores are written into one {@code double[]} per measure. The rankings
+ * by the individual measures are produced from the buffer afterwards.
+ *
+ * <p>The calculators are expected cheapest-first. Measures {@linkplain SimilarityCalculator#isBoundedByFilters() bounded by filters}
+ * are not part of the fused pass when an upper-bound filter is present. The fused pass records the lowest filter score of every
+ * candidate instead, and the ranking by a bounded measure visits the candidates in descending order of their bound, calculating
+ * the measure only until the bound falls below the retained part of the ranking. The rankings are the same as if every
+ * measure had been calculated for every candidate.</p>
+ *
+ * <p>With {@link RuntimeConfig#cascadeScoring} enabled, the measures that are neither cascade gates nor upper-bound filters
+ * are calculated only for the candidates surviving the gates: those scoring at least {@link RuntimeConfig#cascadeMinGateSimilarity}
+ * by a gate measure or ranking among the best {@link RuntimeConfig#cascadeGateTopN} candidates by a gate measure. Unlike the
+ * bounds, the gates may change the rankings by the gated measures, trading the candidates rejected by all gates for calculation time.</p>
+ *
+ * <p>Once the buffer has reached its working size, scoring further products allocates nothing. A buffer is not thread-safe,
+ * each thread should use its own.</p>
+ */
+public class ScoreBuffer {
+    private final SimilarityCalculator[] calculators;
+    private final boolean[] bounded;
+    private final boolean[] gated;
+    private final int[] gates;
+    private ProductFeatures product;
+    private ProductFeatures[] candidates = new ProductFeatures[256];
+    private double[][] scores;
+    private double[] filterBounds = new double[256];
+    private boolean[] survivors = new boolean[256];
+    private int survivorCount;
+    private boolean[] ranked = new boolean[256];
+    private int[] rankedIndices = new int[256];
+    private int rankedCount;
+    private final double[] candidateScores;
+    private int size;
+    private boolean boundOrderReady;
+    private final TopScoredIds selection = new TopScoredIds();
+    private final TopScoredIds boundOrder = new TopScoredIds();
+
+    /**
+     * Constructs a buffer for the scores of the given calculators.
+     *
+     * @param calculators the calculators ordered cheapest-first, their order defines the measure indices of the buffer
+     */
+    public ScoreBuffer(SimilarityCalculator[] calculators) {
+        this.calculators = calculators;
+        this.scores = new double[calculators.length][candidates.length];
+        this.candidateScores = new double[calculators.length];
+        boolean hasFilters = Arrays.stream(calculators).anyMatch(SimilarityCalculator::isUpperBoundFilter);
+        this.gates = IntStream.range(0, calculators.length).filter(metric -> calculators[metric].isCascadeGate()).toArray();
+        boolean cascade = RuntimeConfig.cascadeScoring && gates.length > 0;
+        this.bounded = new boolean[calculators.length];
+        this.gated = new boolean[calculators.length];
+        for (int metric = 0; metric < calculators.length; metric++) {
+            SimilarityCalculator calculator = calculators[metric];
+            bounded[metric] = hasFilters && !calculator.isUpperBoundFilter() && calculator.isBoundedByFilters();
+            gated[metric] = cascade && !calculator.isUpperBoundFilter() && !calculator.isCascadeGate();
+        }
+    }
+
+    /**
+     * Scores all candidates of a product by all measures neither bounded by filters nor gated in one pass, replacing the previous
+     * content of the buffer, and determines the survivors of the cascade gates. The other measures are calculated on demand by
+     * {@link #ranking(int, int, double, PruningStatistics)}.
+     *
+     * @param product the features of the reference product
+     * @param candidateIds the ids of the candidates within the larger e-shop
+     * @param largerEshop the e-shop the candidates belong to
+     */
+    public void score(ProductFeatures product, int[] candidateIds, EshopSubstrings largerEshop) {
+        ensureCapacity(candidateIds.length);
+        this.product = product;
+        size = candidateIds.length;
+        boundOrderReady = false;
+        for (int k = 0; k < rankedCount; k++) {
+            ranked[rankedIndices[k]] = false;
+        }
+        rankedCount = 0;
+
+        for (int i = 0; i < size; i++) {
+            ProductFeatures candidate = largerEshop.featuresById(candidateIds[i]);
+            candidates[i] = candidate;
+            double filterBound = Double.POSITIVE_INFINITY;
+            for (int metric = 0; metric < calculators.length; metric++) {
+                if (isDeferred(metric)) {
+                    scores[metric][i] = Double.NaN;
+                    continue;
+                }
+                double score = calculators[metric].calculate(product, candidate);
+                scores[metric][i] = score;
+                if (calculators[metric].isUpperBoundFilter() && !(score >= filterBound))
+                    filterBound = score;
+            }
+            // a bound that is not a number, e.g. of empty names, must not prevent calculating the bounded measures
+            filterBounds[i] = Double.isNaN(filterBound) ? Double.POSITIVE_INFINITY : filterBound;
+        }
+
+        if (gates.length > 0 && RuntimeConfig.cascadeScoring)
+            selectSurvivors();
+    }
+
+    /**
+     * Returns the number of scored candidates.
+     *
+     * @return the number of candidates in the buffer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the score of a candidate by one measure.
+     *
+     * @param metric the index of the measure
+     * @param index the position of the candidate
+     * @return the similarity score, {@code Double.NaN} if the candidate has not been calculated by the measure, because it did
+     * not survive the cascade gates or its bound excluded it from the ranking
+     */
+    public double score(int metric, int index) {
+        return scores[metric][index];
+    }
+
+    /**
+     * Produces the ranking of the buffered candidates by one measure. Instead of sorting all candidates, the best ones are selected
+     * by a primitive min-heap over the scores and buffer positions, so only the retained candidates are sorted and wrapped into
+     * {@link SimilarityCandidatePair}s. Candidates of equal score keep their order in the buffer.
+     *
+     * @param metric the index of the measure
+     * @param retained the maximum number of returned candidates, 0 or less for no limit
+     * @param minSimilarity the minimum score of a returned candidate
+     * @param statistics the counters receiving the candidates pruned before calculating a bounded or gated measure
+     * @return the most similar candidates paired with their similarity scores, sorted by similarity in descending order
+     */
+    public List<SimilarityCandidatePair> ranking(int metric, int retained, double minSimilarity, PruningStatistics statistics) {
+        int capacity = retained > 0 ? Math.min(retained, size) : size;
+        if (capacity == 0)
+            return new ArrayList<>();
+
+        selection.reset(capacity);
+        if (isDeferred(metric)) {
+            selectDeferred(metric, minSimilarity, statistics);
+        } else {
+            double[] metricScores = scores[metric];
+            for (int i = 0; i < size; i++) {
+                double score = metricScores[i];
+                if (score >= minSimilarity && (!selection.isFull() || score > selection.minScore()))
+                    selection.offer(i, score);
+            }
+        }
+        for (int k = 0; k < selection.size(); k++) {
+            int i = selection.id(k);
+            if (!ranked[i]) {
+                ranked[i] = true;
+                rankedIndices[rankedCount++] = i;
+            }
+        }
+        return sortedSelection();
+    }
+
+    /**
+     * Produces the ranking of the buffered candidates by the combined score. Only candidates returned by a preceding call of
+     * {@link #ranking(int, int, double, PruningStatistics)} for this product are combined, so that the combined ranking is
+     * drawn from the sparse set of candidates ranked well by some measure. Their scores by measures skipped due to
+     * cascade gates or upper bounds are calculated now.
+     *
+     * @param scorer the scorer combining the measures
+     * @param retained the maximum number of returned candidates, 0 or less for no limit
+     * @param minSimilarity the minimum combined score of a returned candidate
+     * @return the candidates with the highest combined scores paired with the scores, sorted by the score in descending order
+     */
+    public List<SimilarityCandidatePair> combinedRanking(CombinedScorer scorer, int retained, double minSimilarity) {
+        int capacity = retained > 0 ? Math.min(retained, rankedCount) : rankedCount;
+        if (capacity == 0)
+            return new ArrayList<>();
+
+        selection.reset(capacity);
+        for (int k = 0; k < rankedCount; k++) {
+            int i = rankedIndices[k];
+            for (int metric = 0; metric < calculators.length; metric++) {
+                if (!scorer.uses(metric))
+                    continue;
+                if (Double.isNaN(scores[metric][i]))
+                    scores[metric][i] = calculators[metric].calculate(product, candidates[i]);
+                candidateScores[metric] = scores[metric][i];
+            }
+            double score = scorer.combine(candidateScores);
+            if (score >= minSimilarity)
+                selection.offer(i, score);
+        }
+        return sortedSelection();
+    }
+
+    private List<SimilarityCandidatePair> sortedSelection() {
+        selection.sortDescending();
+
+        List<SimilarityCandidatePair> sortedCandidates = new ArrayList<>(selection.size());
+        for (int i = 0; i < selection.size(); i++) {
+            sortedCandidates.add(new SimilarityCandidatePair(selection.score(i), candidates[selection.id(i)].product()));
+        }
+        return sortedCandidates;
+    }
+
+    /**
+     * Selects the best candidates by a measure bounded by filters or gated, calculating it only for the candidates that may be selected.
+     * Candidates not surviving the gates of a gated measure are skipped. The candidates of a bounded measure are visited by
+     * descending filter bound, so once the bound of a candidate falls below the minimum similarity or the worst score of the full
+     * selection, no further candidate can be selected. Since the selection breaks ties by buffer position, the visiting order does
+     * not change the result.
+     */
+    private void selectDeferred(int metric, double minSimilarity, PruningStatistics statistics) {
+        SimilarityCalculator calculator = calculators[metric];
+        double[] metricScores = scores[metric];
+        boolean isBounded = bounded[metric];
+        boolean isGated = gated[metric];
+        if (isBounded)
+            sortByBound();
+
+        int calculated = 0;
+        for (int k = 0; k < size; k++) {
+            int i = isBounded ? boundOrder.id(k) : k;
+            if (isGated && !survivors[i])
+                continue;
+            if (isBounded) {
+                double bound = calculator.upperBound(filterBounds[i]);
+                if (bound < minSimilarity || (selection.isFull() && bound < selection.minScore()))
+                    break;
+            }
+
+            double score = calculator.calculate(product, candidates[i]);
+            metricScores[i] = score;
+            calculated++;
+            if (score >= minSimilarity)
+                selection.offer(i, score);
+        }
+
+        int gatePruned = isGated ? size - survivorCount : 0;
+        statistics.record(metric, size, gatePruned, size - gatePruned - calculated);
+    }
+
+    /**
+     * Marks the candidates surviving the cascade gates, i.e. those reaching the minimum gate similarity by some gate measure
+     * or ranking among the best candidates by some gate measure.
+     */
+    private void selectSurvivors() {
+        survivorCount = 0;
+        for (int i = 0; i < size; i++) {
+            survivors[i] = false;
+            for (int gate : gates) {
+                if (scores[gate][i] >= RuntimeConfig.cascadeMinGateSimilarity) {
+                    survivors[i] = true;
+                    survivorCount++;
+                    break;
+                }
+            }
+        }
+
+        int topN = Math.min(RuntimeConfig.cascadeGateTopN, size);
+        if (topN <= 0 || survivorCount == size)
+            return;
+        for (int gate : gates) {
+            selection.reset(topN);
+            for (int i = 0; i < size; i++) {
+                selection.offer(i, scores[gate][i]);
+            }
+            for (int k = 0; k < selection.size(); k++) {
+                int i = selection.id(k);
+                if (!survivors[i]) {
+                    survivors[i] = true;
+                    survivorCount++;
+                }
+            }
+        }
+    }
+
+    private boolean isDeferred(int metric) {
+        return bounded[metric] || gated[metric];
+    }
+
+    private void sortByBound() {
+        if (boundOrderReady)
+            return;
+
+        boundOrder.reset(Math.max(1, size));
+        for (int i = 0; i < size; i++) {
+            boundOrder.offer(i, filterBounds[i]);
+        }
+        boundOrder.sortDescending();
+        boundOrderReady = true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= candidates.length)
+            return;
+
+        int newCapacity = Math.max(capacity, candidates.length * 2);
+        candidates = Arrays.copyOf(candidates, newCapacity);
+        filterBounds = new double[newCapacity];
+        survivors = new boolean[newCapacity];
+        ranked = new boolean[newCapacity];
+        rankedIndices = new int[newCapacity];
+        for (int metric = 0; metric < scores.length; metric++) {
+            scores[metric] = new double[newCapacity];
+        }
+    }
+}
@@ -1,16 +1,88 @@
 package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
 
-import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.sameProductEstimator.ProductFeatures;
 
 /**
  * Abstract base class for calculating similarity between products.
- * Provides a method to remove whitespace from strings and defines
- * an abstract method for similarity calculation to be implemented by subclasses.
+ * Defines an abstract method for similarity calculation to be implemented by subclasses. The products are passed
+ * as their precomputed {@link ProductFeatures}, so implementations only compare and never normalize names.
+ *
+ * <p>Implementations are discovered by {@link SimilarityCalculatorsFactory} through {@link java.util.ServiceLoader}, so they must be
+ * public, have a public no-argument constructor and be listed in
+ * {@code META-INF/services/cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder.SimilarityCalculator}.
+ * Besides the score, every calculator declares the name of its similarity type and a relative cost hint, by which the
+ * calculators are evaluated cheapest-first.</p>
+ *
+ * <p>A calculator may be a cheap <em>upper-bound filter</em>: its score is then an upper bound of the score of every calculator
+ * declaring {@link #isBoundedByFilters()}. Such bounded calculators are evaluated only for candidates whose bound can still
+ * place them into the retained part of their ranking.</p>
+ *
+ * <p>A calculator may also be a <em>cascade gate</em>. With {@link cz.cuni.mff.mbohin.config.RuntimeConfig#cascadeScoring} enabled,
+ * calculators that are neither gates nor upper-bound filters are evaluated only for the candidates surviving the gates.</p>
  */
 public abstract class SimilarityCalculator {
-    abstract double calculate(NormalizedProduct product, NormalizedProduct candidate);
+    /**
+     * Calculates the similarity of a candidate to a product.
+     *
+     * @param product the features of the reference product
+     * @param candidate the features of the candidate
+     * @return the similarity score, higher values meaning more similar products
+     */
+    protected abstract double calculate(ProductFeatures product, ProductFeatures candidate);
 
-    protected String removeWS(String s) {
-        return s.replaceAll("\\s+", "");
+    /**
+     * Returns the name of the similarity type, which identifies the ranking by this calculator and names its output directory.
+     *
+     * @return the similarity type name, unique among all registered calculators
+     */
+    public abstract String name();
+
+    /**
+     * Returns a hint of the cost of one calculation relative to the other calculators, e.g. 1 for a scan of a few characters
+     * and 10 for a quadratic string algorithm. Only the order of the hints matters.
+     *
+     * @return the relative cost, cheaper calculators having lower values
+     */
+    public abstract int relativeCost();
+
+    /**
+     * Determines whether the score of this calculator is an upper bound of the score of every calculator bounded by filters.
+     *
+     * @return true if this calculator is an upper-bound filter, false by default
+     */
+    public boolean isUpperBoundFilter() {
+        return false;
+    }
+
+    /**
+     * Determines whether this calculator is a gate of cascade scoring, deciding together with the other gates which candidates
+     * are passed on to the expensive calculators.
+     *
+     * @return true if this calculator is a cascade gate, false by default
+     */
+    public boolean isCascadeGate() {
+        return false;
+    }
+
+    /**
+     * Determines whether the scores of this calculator are bounded by the scores of the upper-bound filters, as
+     * refined by {@link #upperBound(double)}, so that its calculation may be skipped for candidates that cannot be ranked.
+     *
+     * @return true if this calculator is bounded by filters, false by default
+     */
+    public boolean isBoundedByFilters() {
+        return false;
+    }
+
+    /**
+     * Converts the lowest score of the upper-bound filters for a candidate into an upper bound of the score of this calculator.
+     * The conversion must not decrease as the filter score grows. Calculators whose scores are exact return the filter score,
+     * calculators that approximate low scores may widen the bound.
+     *
+     * @param filterScore the lowest score of the upper-bound filters
+     * @return an upper bound of the score of this calculator
+     */
+    public double upperBound(double filterScore) {
+        return filterScore;
     }
-}
\ No newline at end of file
+}
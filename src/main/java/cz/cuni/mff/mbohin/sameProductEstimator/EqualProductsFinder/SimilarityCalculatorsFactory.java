@@ -1,26 +1,62 @@
 package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 
 /**
- * Factory class for creating and providing a map of different similarity calculators.
- * The calculators are identified by their similarity type names.
+ * Registry of the similarity calculators, identified by their similarity type names. The calculators are discovered once
+ * by {@link ServiceLoader} from the {@code META-INF/services} entries of {@link SimilarityCalculator}, so a new similarity
+ * measure is added by implementing the calculator and listing it in the service file.
+ *
+ * <p>The calculators are ordered cheapest-first by their {@link SimilarityCalculator#relativeCost()}, equal costs by name,
+ * which is the order in which they are evaluated and their output directories are prepared.</p>
  */
 public class SimilarityCalculatorsFactory {
+    private static final Map<String, SimilarityCalculator> CALCULATORS = discoverCalculators();
+
     /**
-     * Creates and returns a map of similarity calculators.
-     * The map keys are the names of the similarity types and the values are the corresponding calculator instances.
+     * Returns the map of similarity calculators.
+     * The map keys are the names of the similarity types and the values are the corresponding calculator instances,
+     * iterated cheapest-first. The map is unmodifiable and shared, as the calculators are stateless.
      *
      * @return a map of similarity calculators
      */
     public static Map<String, SimilarityCalculator> getSimilarityCalculators() {
-        Map<String, SimilarityCalculator> calculators = new HashMap<>();
-        calculators.put("substringSimilarity", new SubstringSimilarityCalculator());
-        calculators.put("prefixSimilarity", new PrefixSimilarityCalculator());
-        calculators.put("LongestCommonSubsequenceSimilarity", new LongestCommonSubsequenceCalculator());
-        calculators.put("LengthAdjustedEditationDistance", new LengthAdjustedEditDistanceCalculator());
-        return calculators;
+        return CALCULATORS;
+    }
+
+    /**
+     * Returns the names of the similarity types of all registered calculators, cheapest-first.
+     *
+     * @return the similarity type names
+     */
+    public static List<String> getSimilarityTypes() {
+        return List.copyOf(CALCULATORS.keySet());
     }
-}
 
+    /**
+     * Loads all calculator providers and orders them by cost.
+     *
+     * @throws IllegalStateException if no calculator is registered or two calculators share a similarity type name
+     */
+    private static Map<String, SimilarityCalculator> discoverCalculators() {
+        List<SimilarityCalculator> discovered = new ArrayList<>();
+        ServiceLoader.load(SimilarityCalculator.class, SimilarityCalculator.class.getClassLoader()).forEach(discovered::add);
+        if (discovered.isEmpty())
+            throw new IllegalStateException("No similarity calculator is registered in META-INF/services.");
+
+        discovered.sort(Comparator.comparingInt(SimilarityCalculator::relativeCost).thenComparing(SimilarityCalculator::name));
+
+        Map<String, SimilarityCalculator> calculators = new LinkedHashMap<>();
+        for (SimilarityCalculator calculator : discovered) {
+            if (calculators.putIfAbsent(calculator.name(), calculator) != null)
+                throw new IllegalStateException("Similarity type " + calculator.name() + " is registered more than once.");
+        }
+        return Collections.unmodifiableMap(calculators);
+    }
+}
@@ -1,29 +1,44 @@
 package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
 
+import cz.cuni.mff.mbohin.sameProductEstimator.CandidateGenerator;
+
 import java.util.Map;
 import java.util.TreeMap;
 
 /**
  * The Statistics class is responsible for calculating and formatting statistical information
  * about the frequency of equal candidates found between two e-shops. It provides a method
- * to generate a detailed report of these statistics in a human-readable format.
+ * to generate a detailed report of these statistics in a human-readable format, including how much
+ * the pruning of candidates by their token overlap reduced the number of pairs passed to the similarity calculators.
+ * The report names the {@link CandidateGenerator} and, if estimated, its recall, so that the trade-off between the number
+ * of candidates and the recall of different generators can be compared.
  */
 public class Statistics {
     private final TreeMap<Integer, Integer> equalCandidatesFrequencies;
+    private final long unprunedCandidatesSum;
     private final int smallerEshopSize;
     private final int largerEshopSize;
+    private final CandidateGenerator candidateGenerator;
+    private final CandidateRecall.Estimate recall;
 
     /**
      * Constructs a Statistics instance with the given frequency map and sizes of the two e-shops.
      *
      * @param equalCandidatesFrequencies a TreeMap where keys are the number of equal candidates and values are their frequencies
+     * @param unprunedCandidatesSum the number of all candidates before pruning by token overlap
      * @param smallerEshopSize the number of products in the smaller e-shop
      * @param largerEshopSize the number of products in the larger e-shop
+     * @param candidateGenerator the generator of the candidates
+     * @param recall the estimated recall of the generator, or null if it has not been estimated
      */
-    public Statistics(TreeMap<Integer, Integer> equalCandidatesFrequencies, int smallerEshopSize, int largerEshopSize) {
+    public Statistics(TreeMap<Integer, Integer> equalCandidatesFrequencies, long unprunedCandidatesSum, int smallerEshopSize, int largerEshopSize,
+                      CandidateGenerator candidateGenerator, CandidateRecall.Estimate recall) {
         this.equalCandidatesFrequencies = equalCandidatesFrequencies;
+        this.unprunedCandidatesSum = unprunedCandidatesSum;
         this.smallerEshopSize = smallerEshopSize;
         this.largerEshopSize = largerEshopSize;
+        this.candidateGenerator = candidateGenerator;
+        this.recall = recall;
     }
 
     /**
@@ -35,18 +50,20 @@ public class Statistics {
      */
     public String getFormattedStatistics() {
         StringBuilder sb = new StringBuilder();
-        int products = 0, candidatesSum = 0;
+        int products = 0;
+        long candidatesSum = 0;
 
         sb.append("Format -- Equal candidates count : frequency\n");
         for (Map.Entry<Integer, Integer> kvp : equalCandidatesFrequencies.entrySet()) {
             sb.append(kvp.getKey()).append(" : ").append(kvp.getValue()).append("\n");
             products += kvp.getValue();
-            candidatesSum += kvp.getKey() * kvp.getValue();
+            candidatesSum += (long) kvp.getKey() * kvp.getValue();
         }
 
         double averageCandidatesPerProduct = (double) candidatesSum / products;
-        int numberOfProductPairs = smallerEshopSize * largerEshopSize;
+        long numberOfProductPairs = (long) smallerEshopSize * largerEshopSize;
         double candidatesAllPairsRatioPercentage = ((double) candidatesSum / numberOfProductPairs) * 100;
+        double unprunedAllPairsRatioPercentage = ((double) unprunedCandidatesSum / numberOfProductPairs) * 100;
 
         sb.append("Products from smaller eshop: ").append(formatWithSpaces(products))
                 .append(" should be equal to ").append(formatWithSpaces(smallerEshopSize)).append("\n");
@@ -55,13 +72,25 @@ public class Statistics {
         sb.append("Smaller eshop has ").append(formatWithSpaces(smallerEshopSize)).append(" products and larger eshop has ")
                 .append(formatWithSpaces(largerEshopSize)).append(" products.\n");
         sb.append("Meaning there are ").append(formatWithSpaces(numberOfProductPairs)).append(" possible pairs of equal products.\n");
+        sb.append("Candidates are generated by ").append(candidateGenerator).append(".\n");
+        sb.append("Products sharing at least one indexed key form ").append(formatWithSpaces(unprunedCandidatesSum)).append(" candidate pairs,\n");
+        sb.append(String.format("which is %.2f %% of possible pairs.\n", unprunedAllPairsRatioPercentage));
         sb.append("ListEqualCandidates method managed to narrow down the candidate list to ").append(formatWithSpaces(candidatesSum)).append("\n");
-        sb.append(String.format("Which is %.2f %% of possible pairs.\n\n", candidatesAllPairsRatioPercentage)).append("\n");
+        sb.append(String.format("Which is %.2f %% of possible pairs.\n", candidatesAllPairsRatioPercentage));
+        sb.append(String.format("Pruning by token overlap removed %.2f %% of candidate pairs.\n",
+                unprunedCandidatesSum == 0 ? 0.0 : (1 - (double) candidatesSum / unprunedCandidatesSum) * 100));
+        if (recall != null) {
+            sb.append("Best matches of ").append(formatWithSpaces(recall.sampledProducts())).append(" sampled products were searched among all products, ")
+                    .append(formatWithSpaces(recall.matchableProducts())).append(" of them reach the minimum assignment score.\n");
+            sb.append(String.format("Candidates contain %s of these best matches, estimated recall %.2f %%.\n",
+                    formatWithSpaces(recall.recalledMatches()), recall.recall() * 100));
+        }
+        sb.append("\n\n");
 
         return sb.toString();
     }
 
-    private String formatWithSpaces(int number) {
+    private String formatWithSpaces(long number) {
         return String.format("%,d", number);
     }
 }
@@ -1,46 +1,59 @@
 package cz.cuni.mff.mbohin.sameProductEstimator.EqualProductsFinder;
 
-import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
-
-import java.util.HashSet;
+import cz.cuni.mff.mbohin.sameProductEstimator.ProductFeatures;
 
 /**
  * A {@link SimilarityCalculator} implementation that calculates the similarity between two products based on the ratio of shared substrings.
- * This class normalizes product names by converting them to lowercase, splits them into substrings, and computes the similarity ratio based on the count of equal substrings.
+ * This class compares the sorted ids of lowercased name substrings precomputed in {@link ProductFeatures} and computes the similarity ratio based on the count of equal substrings.
  */
 public class SubstringSimilarityCalculator extends SimilarityCalculator {
     /**
      * Calculates the similarity between two products based on the ratio of shared substrings.
      * The similarity is defined as the count of equal substrings that both products have, divided by the
-     * smaller total number of substrings from either product. This method throws an exception if no common
-     * substrings are found, indicating a potential misuse or critical error in code architecture.
+     * smaller total number of substrings from either product. Candidates generated from whitespace-split substrings
+     * always share one, candidates generated from character 3-grams or MinHash buckets may share none and score 0.
      *
      * @param product the first product for similarity comparison
      * @param candidate the second product for similarity comparison
      * @return the calculated similarity ratio as a double
-     * @throws IllegalArgumentException if there are no common substrings between the two products
      */
     @Override
-    public double calculate(NormalizedProduct product, NormalizedProduct candidate) {
-        HashSet<String> productSubstrings = getSubstringsSet(product);
-        HashSet<String> candidateSubstrings = getSubstringsSet(candidate);
+    public double calculate(ProductFeatures product, ProductFeatures candidate) {
+        int sameSubstringsCount = product.sharedTokenCount(candidate);
+        if (sameSubstringsCount == 0)
+            return 0;
 
-        int sameSubstringsCount = 0;
-        for (String substring : productSubstrings) {
-            if (candidateSubstrings.contains(substring)) {
-                sameSubstringsCount++;
-            }
-        }
+        int minSubstringCount = Math.min(product.tokenCount(), candidate.tokenCount());
+        return (double) sameSubstringsCount / minSubstringCount;
+    }
 
-        if (sameSubstringsCount == 0) {
-            throw new IllegalArgumentException("In this part of the code, only products with at least one same substring may be called. Critical error in code architecture detected!");
-        }
+    /**
+     * Returns the name of the similarity type.
+     *
+     * @return {@code "substringSimilarity"}
+     */
+    @Override
+    public String name() {
+        return "substringSimilarity";
+    }
 
-        int minSubstringCount = Math.min(productSubstrings.size(), candidateSubstrings.size());
-        return (double) sameSubstringsCount / minSubstringCount;
+    /**
+     * Returns the relative cost of the calculation, a merge of two short arrays of token ids.
+     *
+     * @return 2
+     */
+    @Override
+    public int relativeCost() {
+        return 2;
     }
 
-    private static HashSet<String> getSubstringsSet(NormalizedProduct product) {
-        return new HashSet<>(product.inferredData.getLowerCaseNameParts());
+    /**
+     * Declares the calculator a cascade gate, since the share of common name substrings is cheap to compute and a match without it is unlikely.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isCascadeGate() {
+        return true;
     }
 }
@@ -2,29 +2,50 @@ package cz.cuni.mff.mbohin.sameProductEstimator;
 
 import cz.cuni.mff.mbohin.config.RuntimeConfig;
 import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.TokenDictionary;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Manages the mapping of substrings extracted from product names to their corresponding list of {@link NormalizedProduct} objects.
+ * Manages the mapping of substrings extracted from product names to the products containing them.
  * This class is designed to facilitate efficient searching and matching of products based on name parts within an e-commerce platform,
  * enhancing operations such as product comparison and duplication checks.
  *
- * <p>Upon initialization, this class constructs a dictionary where each key is a substring of a product name, and the value is a list of products
- * that contain that substring. Only substrings longer than two characters are considered to avoid overly common and less distinctive name parts.</p>
+ * <p>Upon initialization, every product is assigned a dense integer id, the row of the product in the columnar {@link ProductTable}
+ * of the e-shop, whose {@link ProductFeatures} views are read by the similarity calculators, and a {@link PostingsIndex} is constructed, mapping each substring
+ * of a product name to the sorted ids of the products that contain that substring. Substrings are identified by their ids in the
+ * shared {@link TokenDictionary}, as exposed by {@link cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.InferredData#getTokenIds()},
+ * so no substring is hashed or compared as a string while indexing or collecting candidates. Only substrings longer than two characters are
+ * considered to avoid overly common and less distinctive name parts. Candidates sharing a substring with a given product are enumerated
+ * by merging the postings of its substrings into a reusable {@link CandidateBuffer}.</p>
+ *
+ * <p>Substrings contained in more than {@link RuntimeConfig#maxSubstringDocumentFrequencyRatio} of the products, such as units,
+ * packaging words or generic adjectives, are suppressed, as they would make nearly every product a candidate of every other.
+ * Once the dictionaries of all e-shops are built, the substrings cut off in any of them are learned into the {@link StopSubstrings}
+ * stop-list, which is applied to every dictionary by {@link #applyStopSubstrings(Set)}. Substrings on the stop-list are suppressed
+ * regardless of their document frequency. Suppressed substrings are skipped when collecting candidates and in the mapping view.</p>
+ *
+ * <p>Depending on {@link RuntimeConfig#candidateGenerator}, candidates are generated from the substrings or from an alternative
+ * {@link CandidateIndex} of character 3-grams ({@link TrigramIndex}) or of MinHash buckets ({@link MinHashIndex}), which is maintained
+ * alongside the substrings. The substrings are indexed in any case, as catalogue updates look up products by them.</p>
  *
  * <p>Utility functions within the class help populate and manage this dictionary by:</p>
  * <ul>
  * <li>Adding products to the dictionary by extracting and processing name substrings.</li>
+ * <li>Incrementally adding and removing products when a catalogue changes, touching only the affected substrings.</li>
  * <li>Logging statistics about the dictionary's size and the distribution of references to products across different substrings.</li>
  * </ul>
  *
@@ -35,67 +56,300 @@ import java.util.logging.Logger;
  */
 public class EshopSubstrings {
     public List<NormalizedProduct> products;
-    public final Map<String, List<NormalizedProduct>> substringsToProducts = new HashMap<>();
+    private final ProductTable table;
+    private final Map<NormalizedProduct, Integer> idsByProduct = new HashMap<>();
+    private final TokenDictionary dictionary = TokenDictionary.shared();
+    private final PostingsIndex substringsIndex = new PostingsIndex();
+    private Set<String> stopSubstrings = Set.of();
+    private final CandidateIndex candidateIndex = switch (RuntimeConfig.candidateGenerator) {
+        case TOKENS -> null;
+        case TRIGRAMS -> new TrigramIndex();
+        case MINHASH -> new MinHashIndex();
+    };
 
     private static final Logger LOGGER = Logger.getLogger("EshopSubstrings logger");
 
     /**
      * Initializes an EshopSubstrings instance with a list of normalized products.
-     * Constructs a dictionary mapping substrings of product names to their respective product lists
-     * and logs statistics about the dictionary's size and distribution.
+     * Constructs a dictionary mapping substrings of product names to their respective product ids and suppresses substrings
+     * exceeding the document frequency cutoff. No stop-list is applied until {@link #applyStopSubstrings(Set)} is called.
      *
      * @param products the list of normalized products to be processed
      */
     public EshopSubstrings(List<NormalizedProduct> products) {
         this.products = products;
+        this.table = ProductTable.sizedFor(products);
         for (NormalizedProduct product : products) {
             addSubstringsToDictionary(product);
         }
+        substringsIndex.trimToSize();
+        updateSuppression();
+    }
 
-        consoleLogDictionarySizeStats();
+    /**
+     * Returns the substrings whose document frequency exceeds the cutoff of this e-shop, regardless of the stop-list.
+     *
+     * @return the cut-off substrings
+     */
+    public List<String> cutOffSubstrings() {
+        List<String> cutOffSubstrings = new ArrayList<>();
+        int maxDocumentFrequency = maxDocumentFrequency();
+        for (int tokenId = 0; tokenId < substringsIndex.tokenCount(); tokenId++) {
+            if (substringsIndex.postingsSize(tokenId) > maxDocumentFrequency)
+                cutOffSubstrings.add(dictionary.token(tokenId));
+        }
+        return cutOffSubstrings;
+    }
 
+    /**
+     * Replaces the stop-list applied to this dictionary and re-evaluates the suppression of all substrings.
+     *
+     * @param stopSubstrings the stop-list learned from the dictionaries of all e-shops
+     */
+    public void applyStopSubstrings(Set<String> stopSubstrings) {
+        this.stopSubstrings = stopSubstrings;
+        updateSuppression();
+    }
+
+    /**
+     * Logs statistics about the dictionary's size and distribution on the console and writes the substrings mapping view to disk.
+     */
+    public void logDictionary() {
+        consoleLogDictionarySizeStats();
         logEqualSubstringsMappingView();
     }
 
+    /**
+     * Incrementally adds products to this instance, indexing only the substrings of the added products.
+     * The added products receive new ids following all present ids. The suppression of the touched substrings is re-evaluated
+     * against the document frequency cutoff, the substrings mapping view on disk is not regenerated.
+     *
+     * @param addedProducts the products to be added, they must belong to the same e-shop as the present ones
+     */
+    public void addProducts(Collection<NormalizedProduct> addedProducts) {
+        List<NormalizedProduct> updatedProducts = new ArrayList<>(products);
+        updatedProducts.addAll(addedProducts);
+        products = updatedProducts;
+
+        for (NormalizedProduct product : addedProducts) {
+            addSubstringsToDictionary(product);
+        }
+        updateSuppression(addedProducts);
+    }
+
+    /**
+     * Incrementally removes products from this instance. Only the postings of substrings contained in the names
+     * of the removed products are touched and their suppression is re-evaluated. Ids of removed products are never reused.
+     *
+     * @param removedProducts the products to be removed
+     */
+    public void removeProducts(Collection<NormalizedProduct> removedProducts) {
+        Set<NormalizedProduct> removed = new HashSet<>(removedProducts);
+        products = products.stream().filter(product -> !removed.contains(product)).toList();
+
+        for (int id = 0; id < table.rowCount(); id++) {
+            NormalizedProduct product = table.product(id);
+            if (product != null && removed.contains(product)) {
+                for (int tokenId : product.inferredData.getTokenIds()) {
+                    substringsIndex.remove(tokenId, id);
+                }
+                if (candidateIndex != null)
+                    candidateIndex.remove(id, product);
+                table.remove(id);
+                idsByProduct.remove(product);
+            }
+        }
+        updateSuppression(removedProducts);
+    }
+
+    /**
+     * Returns the upper bound of the dense ids assigned so far. Ids of removed products are below the bound as well.
+     *
+     * @return the number of ids assigned so far
+     */
+    public int idLimit() {
+        return table.rowCount();
+    }
+
+    /**
+     * Returns the product with the specified id.
+     *
+     * @param id the dense id of the product
+     * @return the product, or null if the product has been removed
+     */
+    public NormalizedProduct productById(int id) {
+        return table.product(id);
+    }
+
+    /**
+     * Returns the comparison keys of the product with the specified id, computed when the product was added.
+     *
+     * @param id the dense id of the product
+     * @return the features of the product, or null if the product has been removed
+     */
+    public ProductFeatures featuresById(int id) {
+        return table.features(id);
+    }
+
+    /**
+     * Returns the comparison keys of the specified product. Keys of products of this e-shop are looked up,
+     * keys of any other product are computed.
+     *
+     * @param product the product whose features are requested
+     * @return the features of the product
+     */
+    public ProductFeatures featuresOf(NormalizedProduct product) {
+        Integer id = idsByProduct.get(product);
+        return id != null ? table.features(id) : ProductFeatures.of(product);
+    }
+
+    /**
+     * Collects ids of all products sharing at least one substring longer than two characters, which is not suppressed,
+     * with the given product into the buffer. The buffer is cleared first and its ids are sorted in increasing order afterwards.
+     * For every candidate the buffer counts the shared substrings and sums their inverse document frequency weights
+     * {@code ln(1 + N / df)}, where N is the number of products and df the number of products containing the substring,
+     * so that a shared generic word such as "bio" weighs much less than a shared brand name. If all substrings of the product
+     * are suppressed, the least frequent of them is used, so that the product does not lose all its candidates.
+     * Every distinct substring is weighed once, however many times it occurs in the name.
+     * If an alternative {@link CandidateGenerator} is configured, the candidates are collected from its index instead.
+     *
+     * @param features the features of the product whose candidates are collected, typically from another e-shop
+     * @param buffer the reusable buffer receiving the candidate ids
+     */
+    public void collectCandidates(ProductFeatures features, CandidateBuffer buffer) {
+        if (candidateIndex != null) {
+            candidateIndex.collectCandidates(features.product(), buffer, products.size());
+            return;
+        }
+
+        buffer.clear();
+        double productCount = products.size();
+        int rarestSuppressedTokenId = -1;
+        boolean anyUnsuppressed = false;
+        for (int i = 0; i < features.tokenCount(); i++) {
+            int tokenId = features.tokenId(i);
+            // substrings of up to two characters are never indexed, so their postings are empty
+            int documentFrequency = substringsIndex.postingsSize(tokenId);
+            if (documentFrequency == 0)
+                continue;
+
+            if (substringsIndex.isSuppressed(tokenId)) {
+                if (rarestSuppressedTokenId < 0 || documentFrequency < substringsIndex.postingsSize(rarestSuppressedTokenId))
+                    rarestSuppressedTokenId = tokenId;
+            } else {
+                anyUnsuppressed = true;
+                buffer.addAll(substringsIndex.postings(tokenId), documentFrequency, Math.log(1 + productCount / documentFrequency));
+            }
+        }
+        if (!anyUnsuppressed && rarestSuppressedTokenId >= 0) {
+            int documentFrequency = substringsIndex.postingsSize(rarestSuppressedTokenId);
+            buffer.addAll(substringsIndex.postings(rarestSuppressedTokenId), documentFrequency, Math.log(1 + productCount / documentFrequency));
+        }
+        buffer.sort();
+    }
+
+    /**
+     * Returns all products whose name contains the specified substring.
+     *
+     * @param tokenId the id of the lowercase substring in the shared {@link TokenDictionary}
+     * @return the list of products containing the substring, empty if there is none
+     */
+    public List<NormalizedProduct> productsContaining(int tokenId) {
+        if (substringsIndex.postingsSize(tokenId) == 0)
+            return List.of();
+
+        List<NormalizedProduct> result = new ArrayList<>(substringsIndex.postingsSize(tokenId));
+        int[] postings = substringsIndex.postings(tokenId);
+        for (int i = 0; i < substringsIndex.postingsSize(tokenId); i++) {
+            result.add(table.product(postings[i]));
+        }
+        return result;
+    }
+
     private void addSubstringsToDictionary(NormalizedProduct product) {
-        for (String part : product.inferredData.getLowerCaseNameParts()) {
-            if (part.length() > 2) {
-                addPartToDictionary(part, product);
+        int id = table.append(product);
+        idsByProduct.put(product, id);
+        for (int tokenId : product.inferredData.getTokenIds()) {
+            if (dictionary.token(tokenId).length() > 2) {
+                substringsIndex.add(tokenId, id);
             }
         }
+        if (candidateIndex != null)
+            candidateIndex.add(id, product);
+    }
+
+    private void updateSuppression(int tokenId) {
+        int documentFrequency = substringsIndex.postingsSize(tokenId);
+        boolean suppress = documentFrequency > 0
+                && (documentFrequency > maxDocumentFrequency() || stopSubstrings.contains(dictionary.token(tokenId)));
+        substringsIndex.setSuppressed(tokenId, suppress);
     }
 
-    private void addPartToDictionary(String part, NormalizedProduct product) {
-        if (substringsToProducts.containsKey(part)) {
-            substringsToProducts.get(part).add(product);
-        } else {
-            List<NormalizedProduct> list = new ArrayList<>();
-            list.add(product);
-            substringsToProducts.put(part, list);
+    private void updateSuppression() {
+        for (int tokenId = 0; tokenId < substringsIndex.tokenCount(); tokenId++) {
+            updateSuppression(tokenId);
         }
     }
 
-    private void consoleLogDictionarySizeStats() {
-        System.out.println("Constructed dictionary of product names substrings to list of product references of eshop " + products.getFirst().eshop);
-        System.out.println("Dictionary contains " + substringsToProducts.size() + " keys.");
+    private void updateSuppression(Collection<NormalizedProduct> touchedProducts) {
+        for (NormalizedProduct product : touchedProducts) {
+            for (int tokenId : product.inferredData.getTokenIds()) {
+                updateSuppression(tokenId);
+            }
+        }
+    }
 
-        int counter = 0;
-        for (List<NormalizedProduct> productsWithSameSubstrings : substringsToProducts.values()) {
-            counter += productsWithSameSubstrings.size();
+    private int maxDocumentFrequency() {
+        return (int) Math.ceil(RuntimeConfig.maxSubstringDocumentFrequencyRatio * products.size());
+    }
+
+    private void consoleLogDictionarySizeStats() {
+        int keys = 0, suppressedKeys = 0;
+        long counter = 0, suppressedCounter = 0;
+        List<Integer> suppressedTokenIds = new ArrayList<>();
+        for (int tokenId = 0; tokenId < substringsIndex.tokenCount(); tokenId++) {
+            if (substringsIndex.postingsSize(tokenId) > 0) {
+                keys++;
+                counter += substringsIndex.postingsSize(tokenId);
+                if (substringsIndex.isSuppressed(tokenId)) {
+                    suppressedKeys++;
+                    suppressedCounter += substringsIndex.postingsSize(tokenId);
+                    suppressedTokenIds.add(tokenId);
+                }
+            }
         }
+        suppressedTokenIds.sort(Comparator.comparingInt(substringsIndex::postingsSize).reversed());
 
+        System.out.println("Constructed dictionary of product names substrings to list of product references of eshop " + products.getFirst().eshop);
+        System.out.println("Dictionary contains " + keys + " keys.");
         System.out.println("Sum of all product references " + counter);
-        System.out.printf("Average references per one substring %.2f%n", (double) counter / substringsToProducts.size());
-        System.out.printf("Average number of ws split substrings per product %.2f%n \n", (double) substringsToProducts.size() / products.size());
+        System.out.printf("Average references per one substring %.2f%n", (double) counter / keys);
+        System.out.printf("Average number of ws split substrings per product %.2f%n", (double) keys / products.size());
+        System.out.println("Suppressed " + suppressedKeys + " substrings with more than " + maxDocumentFrequency() + " references or on the learned stop-list ("
+                + stopSubstrings.size() + " entries), holding " + suppressedCounter + " product references.");
+        System.out.println("Most frequent suppressed substrings " + suppressedTokenIds.stream().limit(10)
+                .map(tokenId -> dictionary.token(tokenId) + " (" + substringsIndex.postingsSize(tokenId) + ")").toList());
+        if (candidateIndex != null)
+            System.out.println("Candidates are generated by " + RuntimeConfig.candidateGenerator + ". " + candidateIndex.describe());
+        System.out.println();
     }
 
     private void logEqualSubstringsMappingView() {
         String eshopName = products.getFirst().eshop.toString();
         createSubstringMappingDirectory(eshopName);
         StringBuilder substringWithInvalidFileName = new StringBuilder();
+        StringBuilder suppressedSubstrings = new StringBuilder();
+
+        for (int tokenId = 0; tokenId < substringsIndex.tokenCount(); tokenId++) {
+            if (substringsIndex.postingsSize(tokenId) == 0)
+                continue;
 
-        for(String substring : substringsToProducts.keySet()) {
-            StringBuilder sb = buildSubstringsMapping(substring);
+            String substring = dictionary.token(tokenId);
+            if (substringsIndex.isSuppressed(tokenId)) {
+                suppressedSubstrings.append(substring).append(" : ").append(substringsIndex.postingsSize(tokenId)).append("\n");
+                continue;
+            }
+            StringBuilder sb = buildSubstringsMapping(tokenId);
             saveLogsToFile(sb, eshopName, substring, substringWithInvalidFileName);
         }
 
@@ -106,6 +360,14 @@ public class EshopSubstrings {
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "An error occurred with invalidDubstrings eshopSubstrings.logEqualSubstringsMappingView", e);
         }
+
+        filePath = RuntimeConfig.substringsMappingDirectory + eshopName + "/suppressedSubstrings/suppressed.txt";
+        createSubstringMappingDirectory(eshopName + "/suppressedSubstrings");
+        try (FileWriter fw = new FileWriter(filePath)) {
+            fw.write(suppressedSubstrings.toString());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "An error occurred with suppressedSubstrings eshopSubstrings.logEqualSubstringsMappingView", e);
+        }
     }
 
     private void createSubstringMappingDirectory(String eshopName) {
@@ -115,10 +377,11 @@ public class EshopSubstrings {
         }
     }
 
-    private StringBuilder buildSubstringsMapping(String subString) {
+    private StringBuilder buildSubstringsMapping(int tokenId) {
         StringBuilder sb = new StringBuilder();
-        for(NormalizedProduct product : substringsToProducts.get(subString)) {
-            sb.append(product.name).append("\n");
+        int[] postings = substringsIndex.postings(tokenId);
+        for (int i = 0; i < substringsIndex.postingsSize(tokenId); i++) {
+            sb.append(table.product(postings[i]).name).append("\n");
         }
         return sb;
     }
@@ -1,9 +1,15 @@
 package cz.cuni.mff.mbohin.sameProductEstimator;
 
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+
 /**
  * Provides a method to calculate the length of the longest common subsequence (LCS) between two strings.
  * The LCS is the longest sequence of characters that appear in the same order in both strings but not necessarily consecutively.
  * This class uses dynamic programming to efficiently compute the LCS length.
+ *
+ * <p>If one of the strings has at most 64 characters, the length is computed by the bit-parallel algorithm of Allison and Dix
+ * in Hyyrö's formulation instead, which processes one character of the longer string in a constant number of word operations
+ * using the {@link CharacterMasks} of the shorter string. The masks of the first string are cached per thread.</p>
  */
 public class LCSFinder {
     /**
@@ -16,6 +22,13 @@ public class LCSFinder {
      * @return the length of the longest common subsequence between the two strings
      */
     public static int longestCommonSubsequence(String x, String y) {
+        if (RuntimeConfig.bitParallelStringMetrics) {
+            if (x.length() <= CharacterMasks.MAX_LENGTH)
+                return bitParallelLongestCommonSubsequence(CharacterMasks.cached(x), y);
+            if (y.length() <= CharacterMasks.MAX_LENGTH)
+                return bitParallelLongestCommonSubsequence(CharacterMasks.scratch(y), x);
+        }
+
         int m = x.length();
         int n = y.length();
         int[][] lcsLengthTable = new int[m + 1][n + 1];
@@ -32,4 +45,26 @@ public class LCSFinder {
 
         return lcsLengthTable[m][n];
     }
-}
\ No newline at end of file
+
+    /**
+     * Computes the length of the longest common subsequence of a pattern of at most 64 characters and a text. The bit vector
+     * {@code row} has a zero bit at every position of the pattern where the LCS of the processed text prefix grows,
+     * so the LCS length is the number of zero bits within the pattern length.
+     *
+     * @param pattern the masks of the pattern
+     * @param text the text of any length
+     * @return the length of the longest common subsequence of the pattern and the text
+     */
+    private static int bitParallelLongestCommonSubsequence(CharacterMasks pattern, String text) {
+        int m = pattern.length();
+        long patternBits = m == 64 ? -1L : (1L << m) - 1;
+        long row = -1L;
+
+        for (int j = 0; j < text.length(); j++) {
+            long matches = row & pattern.mask(text.charAt(j));
+            row = (row + matches) | (row - matches);
+        }
+
+        return m - Long.bitCount(row & patternBits);
+    }
+}
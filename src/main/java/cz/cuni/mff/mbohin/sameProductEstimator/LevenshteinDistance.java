@@ -1,13 +1,27 @@
 package cz.cuni.mff.mbohin.sameProductEstimator;
 
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+
 /**
- * Provides a method to compute the length-adjusted edit distance between two strings.
+ * Provides methods to compute the edit distance and the length-adjusted edit distance between two strings.
  * The edit distance is the minimum number of operations (insertions, deletions, or substitutions)
- * required to transform one string into the other. This method adjusts the raw edit distance
- * by subtracting the absolute difference in lengths of the two strings, ensuring fairness
- * for strings of different lengths.
+ * required to transform one string into the other. The length-adjusted variant subtracts the absolute difference
+ * in lengths of the two strings, ensuring fairness for strings of different lengths.
+ *
+ * <p>The distance is computed by a two-row dynamic programming kernel working in linear space. The rows are thread-local
+ * buffers reused by all computations of a thread, so no memory is allocated per pair of strings. Given a maximum distance k,
+ * only the diagonal band of width 2k + 1 is evaluated (Ukkonen's banding) and the computation stops as soon as the minimum
+ * of a row exceeds k, which bounds the cost by O(k * n) instead of O(n * m).</p>
+ *
+ * <p>If one of the strings has at most 64 characters, which is the case of nearly all product names, the distance is computed
+ * by the bit-parallel algorithm of Myers in Hyyrö's formulation instead. It encodes a whole column of the table into two bit
+ * vectors and processes one character of the longer string in a constant number of word operations, using the
+ * {@link CharacterMasks} of the shorter string. The masks of the first string are cached, so comparing one product name
+ * with many candidates builds them only once.</p>
  */
 public class LevenshteinDistance {
+    private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[2][64]);
+
     /**
      * Computes the length-adjusted edit distance between two strings. The edit distance is the minimum number of operations
      * required to transform one string into the other, with operations being insertions, deletions, or substitutions. This
@@ -21,38 +35,153 @@ public class LevenshteinDistance {
      * @throws IllegalStateException if the result of the length adjustment is negative, indicating a flaw in the method's logic
      */
     public static int lengthAdjustedEditDistance(String x, String y) {
+        return lengthAdjustedEditDistance(x, y, Math.max(x.length(), y.length()));
+    }
+
+    /**
+     * Computes the length-adjusted edit distance between two strings, provided it does not exceed the given maximum.
+     * Since the length difference is a lower bound of the edit distance, the edit distance is computed with the maximum
+     * {@code maxAdjustedDistance + |n - m|} and the length difference is subtracted afterwards.
+     *
+     * @param x the first string
+     * @param y the second string
+     * @param maxAdjustedDistance the largest adjusted distance of interest, not negative
+     * @return the adjusted edit distance if it is at most {@code maxAdjustedDistance}, otherwise {@code maxAdjustedDistance + 1}
+     * @throws IllegalStateException if the result of the length adjustment is negative, indicating a flaw in the method's logic
+     */
+    public static int lengthAdjustedEditDistance(String x, String y, int maxAdjustedDistance) {
+        int lengthDifference = Math.abs(x.length() - y.length());
+        int maxDistance = Math.min(maxAdjustedDistance, Math.max(x.length(), y.length())) + lengthDifference;
+        int result = editDistance(x, y, maxDistance) - lengthDifference; // od vysledku odecteme rozdil delek stringu v absolutni hodnote
+
+        // celkem prirozene je zrejme, ze rozdil delek muze byt nanejvys editacni vzdalenost,
+        // ale z principu defenzivniho programovani se zabijeme pokud by tento
+        // invariant neplatil (muze nastat jen pri bugu v kodu)
+        if (result < 0)
+            throw new IllegalStateException("Impossible result, there is an error in the code.");
+
+        return result;
+    }
+
+    /**
+     * Computes the edit distance between two strings, provided it does not exceed the given maximum. Only the cells of the
+     * dynamic programming table within {@code maxDistance} of the main diagonal are evaluated, cells outside the band are
+     * treated as {@code maxDistance + 1}. The computation stops early once every cell of a row exceeds the maximum.
+     *
+     * @param x the first string
+     * @param y the second string
+     * @param maxDistance the largest distance of interest, not negative
+     * @return the edit distance if it is at most {@code maxDistance}, otherwise {@code maxDistance + 1}
+     * @throws IllegalArgumentException if the maximum distance is negative
+     */
+    public static int editDistance(String x, String y, int maxDistance) {
+        if (maxDistance < 0)
+            throw new IllegalArgumentException("Maximum distance may not be negative: " + maxDistance);
+
+        if (RuntimeConfig.bitParallelStringMetrics && Math.abs(x.length() - y.length()) <= maxDistance) {
+            if (x.length() <= CharacterMasks.MAX_LENGTH)
+                return Math.min(bitParallelEditDistance(CharacterMasks.cached(x), y), maxDistance + 1);
+            if (y.length() <= CharacterMasks.MAX_LENGTH)
+                return Math.min(bitParallelEditDistance(CharacterMasks.scratch(y), x), maxDistance + 1);
+        }
+
+        if (x.length() < y.length()) { // radky tabulky vedeme pres kratsi string
+            String swap = x;
+            x = y;
+            y = swap;
+        }
         int n = x.length();
         int m = y.length();
-        int[][] editDistanceTable = new int[n + 1][m + 1];
+        int k = Math.min(maxDistance, n);
+        int outOfBand = k + 1;
+        if (n - m > k)
+            return outOfBand;
+
+        int[][] rows = rowBuffers(m + 2);
+        int[] previous = rows[0];
+        int[] current = rows[1];
 
-        // Vyplnovani editDistanceTable[][] je v bottom up smeru
-        for (int i = 0; i <= n; i++) {
-            for (int j = 0; j <= m; j++) {
-                if (i == 0) // je-li prvni string prazdny, jediny zpusob je vlozeni znaku druheho stringu
-                    editDistanceTable[i][j] = j;
+        // prvni radek odpovida prazdnemu prefixu prvniho stringu, jediny zpusob je vlozeni znaku druheho stringu
+        for (int j = 0; j <= m; j++)
+            previous[j] = Math.min(j, outOfBand);
 
-                else if (j == 0) // opacne je-li druhy string prazdny, postupujeme odebiranim znaku prvniho stringu
-                    editDistanceTable[i][j] = i;
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - k);
+            int to = Math.min(m, i + k);
 
-                else if (x.charAt(i - 1) == y.charAt(j - 1)) // je-li posledni znak stejny, ignoruj posledni znak a skoc na zbytek obou stringu
-                    editDistanceTable[i][j] = editDistanceTable[i - 1][j - 1];
+            // prvni sloupec odpovida prazdnemu prefixu druheho stringu, postupujeme odebiranim znaku prvniho stringu
+            current[from - 1] = from == 1 ? Math.min(i, outOfBand) : outOfBand;
+            int rowMinimum = current[from - 1];
+            char c = x.charAt(i - 1);
 
-                else // jsou-posledni znaky ruzne, zvaz vsechny tri moznosti a vyber minimum
-                    editDistanceTable[i][j] = 1 + Math.min(Math.min(editDistanceTable[i - 1][j],    // Odebrani
-                                    editDistanceTable[i][j - 1]),                                   // Vlozeni
-                            editDistanceTable[i - 1][j - 1]);                                       // Prepsani
+            for (int j = from; j <= to; j++) {
+                int substitution = previous[j - 1] + (c == y.charAt(j - 1) ? 0 : 1);  // Prepsani
+                int deletionOrInsertion = Math.min(previous[j], current[j - 1]) + 1;   // Odebrani, Vlozeni
+                int value = Math.min(Math.min(substitution, deletionOrInsertion), outOfBand);
+                current[j] = value;
+                rowMinimum = Math.min(rowMinimum, value);
             }
+            if (to < m)
+                current[to + 1] = outOfBand;
+
+            if (rowMinimum > k) // hodnoty v dalsich radcich uz nemohou klesnout, vzdalenost prekrocila maximum
+                return outOfBand;
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
         }
 
-        int result = editDistanceTable[n][m] - Math.abs(n - m); // od vysledku odecteme rozdil delek stringu v absolutni hodnote
+        return previous[m];
+    }
 
-        // celkem prirozene je zrejme, ze rozdil delek muze byt nanejvys editacni vzdalenost,
-        // ale z principu defenzivniho programovani se zabijeme pokud by tento
-        // invariant neplatil (muze nastat jen pri bugu v kodu)
-        if (result < 0)
-            throw new IllegalStateException("Impossible result, there is an error in the code.");
+    /**
+     * Computes the edit distance between a pattern of at most 64 characters and a text by the bit-parallel algorithm of Myers.
+     * The vertical differences of the current column are encoded in the bit vectors {@code positive} and {@code negative},
+     * the score tracks the value in the last row of the table.
+     *
+     * @param pattern the masks of the pattern
+     * @param text the text of any length
+     * @return the edit distance between the pattern and the text
+     */
+    private static int bitParallelEditDistance(CharacterMasks pattern, String text) {
+        int m = pattern.length();
+        if (m == 0)
+            return text.length();
 
-        return result;
+        long positive = m == 64 ? -1L : (1L << m) - 1;
+        long negative = 0;
+        long lastBit = 1L << (m - 1);
+        int score = m;
+
+        for (int j = 0; j < text.length(); j++) {
+            long equal = pattern.mask(text.charAt(j));
+            long verticalX = equal | negative;
+            long horizontalX = (((equal & positive) + positive) ^ positive) | equal;
+            long horizontalPositive = negative | ~(horizontalX | positive);
+            long horizontalNegative = positive & horizontalX;
+
+            if ((horizontalPositive & lastBit) != 0)
+                score++;
+            else if ((horizontalNegative & lastBit) != 0)
+                score--;
+
+            // prvni radek tabulky roste s kazdym znakem textu, proto se zleva dosouva jednicka
+            horizontalPositive = (horizontalPositive << 1) | 1;
+            horizontalNegative <<= 1;
+            positive = horizontalNegative | ~(verticalX | horizontalPositive);
+            negative = horizontalPositive & verticalX;
+        }
+
+        return score;
     }
-}
 
+    private static int[][] rowBuffers(int length) {
+        int[][] rows = ROWS.get();
+        if (rows[0].length < length) {
+            rows[0] = new int[Math.max(length, rows[0].length * 2)];
+            rows[1] = new int[rows[0].length];
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,120 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.TokenDictionary;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A {@link CandidateIndex} hashing products into buckets by locality-sensitive hashing of the MinHash signatures of their
+ * character 3-gram sets, as produced by {@link TrigramIndex#trigrams(String)}.
+ *
+ * <p>The signature of a product consists of {@code b * r} minima of independent hash functions over its grams, where b is
+ * {@link RuntimeConfig#minHashBands} and r is {@link RuntimeConfig#minHashRowsPerBand}. Two products agree on one minimum
+ * with the probability equal to the Jaccard similarity s of their gram sets. The signature is split into b bands of r rows
+ * and every band is hashed into a bucket, so two products share at least one bucket with the probability
+ * {@code 1 - (1 - s^r)^b}, e.g. 0.93 for s = 0.5 and only 0.01 for s = 0.1 with 20 bands of 3 rows.</p>
+ *
+ * <p>The bucket keys are interned in a {@link TokenDictionary} of the index and kept in a {@link PostingsIndex}, so a lookup merges only b small postings lists, independently of the
+ * catalogue size. The overlap weight of a candidate is the number of buckets it shares with the product, an estimate of
+ * their similarity.</p>
+ */
+public class MinHashIndex implements CandidateIndex {
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final int bands = RuntimeConfig.minHashBands;
+    private final int rows = RuntimeConfig.minHashRowsPerBand;
+    private final long[] hashSeeds = new long[bands * rows];
+    private final TokenDictionary bucketIds = new TokenDictionary();
+    private final PostingsIndex bucketsIndex = new PostingsIndex();
+
+    /**
+     * Constructs an empty index. The hash functions are derived from a fixed seed, so the buckets are the same in every run.
+     */
+    public MinHashIndex() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < hashSeeds.length; i++) {
+            hashSeeds[i] = random.nextLong();
+        }
+    }
+
+    @Override
+    public void add(int id, NormalizedProduct product) {
+        for (String bucket : buckets(product)) {
+            bucketsIndex.add(bucketIds.intern(bucket), id);
+        }
+    }
+
+    @Override
+    public void remove(int id, NormalizedProduct product) {
+        for (String bucket : buckets(product)) {
+            bucketsIndex.remove(bucketIds.id(bucket), id);
+        }
+    }
+
+    @Override
+    public void collectCandidates(NormalizedProduct product, CandidateBuffer buffer, int productCount) {
+        buffer.clear();
+        for (String bucket : buckets(product)) {
+            int bucketId = bucketIds.id(bucket);
+            if (bucketsIndex.postingsSize(bucketId) > 0)
+                buffer.addAll(bucketsIndex.postings(bucketId), bucketsIndex.postingsSize(bucketId), 1.0);
+        }
+        buffer.sort();
+    }
+
+    @Override
+    public String describe() {
+        int buckets = 0;
+        long references = 0;
+        for (int bucketId = 0; bucketId < bucketsIndex.tokenCount(); bucketId++) {
+            if (bucketsIndex.postingsSize(bucketId) > 0) {
+                buckets++;
+                references += bucketsIndex.postingsSize(bucketId);
+            }
+        }
+        return "MinHash index of " + bands + " bands of " + rows + " rows contains " + buckets + " buckets with " + references + " product references.";
+    }
+
+    /**
+     * Computes the bucket keys of a product, one per band, distinct bands never sharing a key.
+     */
+    private String[] buckets(NormalizedProduct product) {
+        String[] grams = TrigramIndex.trigrams(ProductFeatures.strippedLowerCase(product.name));
+        if (grams.length == 0)
+            return new String[0];
+
+        long[] signature = new long[hashSeeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String gram : grams) {
+            long code = 0;
+            for (int i = 0; i < gram.length(); i++) {
+                code = (code << 16) | gram.charAt(i);
+            }
+            for (int k = 0; k < signature.length; k++) {
+                signature[k] = Math.min(signature[k], mix(code ^ hashSeeds[k]));
+            }
+        }
+
+        String[] buckets = new String[bands];
+        for (int band = 0; band < bands; band++) {
+            long hash = band;
+            for (int row = 0; row < rows; row++) {
+                hash = mix(hash * 31 + signature[band * rows + row]);
+            }
+            buckets[band] = band + ":" + Long.toString(hash, 36);
+        }
+        return buckets;
+    }
+
+    /**
+     * The finalizer of the SplitMix64 generator, a bijective mixing of all bits of a long.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
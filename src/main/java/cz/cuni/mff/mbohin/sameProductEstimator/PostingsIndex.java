@@ -0,0 +1,146 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.TokenDictionary;
+
+import java.util.Arrays;
+
+/**
+ * An inverted index from tokens to sorted lists of dense integer product ids. Tokens are identified by dense integer ids
+ * assigned by a {@link TokenDictionary}, so the index itself holds no strings, and the postings of a token are kept
+ * in a primitive {@code int[]}, which is several times more compact than a list of object references and can be merged without allocation.
+ *
+ * <p>Product ids must be added in non-decreasing order for every token, which keeps every postings list sorted.
+ * Postings lists are grown geometrically while the index is being built and can be trimmed to their exact size afterwards.</p>
+ *
+ * <p>A token may be suppressed, e.g. because it is contained in too many products to distinguish them. The postings of a suppressed
+ * token are still maintained, so that the suppression can be lifted when the token becomes rare again, but lookups should skip them.</p>
+ *
+ * @see EshopSubstrings
+ * @see CandidateBuffer
+ */
+public class PostingsIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private int tokenCount;
+    private int[][] postings = new int[64][];
+    private int[] postingsSizes = new int[64];
+    private boolean[] suppressed = new boolean[64];
+
+    /**
+     * Returns the upper bound of the token ids added so far. Tokens below the bound that have never been added have empty postings.
+     *
+     * @return the greatest added token id plus one
+     */
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Adds a product id to the postings of a token. Adding the same product id to the same token twice in a row has no effect.
+     *
+     * @param tokenId the id of the token contained in the product name
+     * @param productId the id of the product, not smaller than any id already present in the token's postings
+     * @throws IllegalArgumentException if the product id would break the ordering of the postings
+     */
+    public void add(int tokenId, int productId) {
+        ensureCapacity(tokenId);
+        int size = postingsSizes[tokenId];
+        int[] list = postings[tokenId];
+
+        if (size > 0 && list[size - 1] >= productId) {
+            if (list[size - 1] == productId)
+                return;
+            throw new IllegalArgumentException("Product ids must be added in increasing order, " + productId + " follows " + list[size - 1] + ".");
+        }
+
+        if (size == list.length)
+            list = postings[tokenId] = Arrays.copyOf(list, Math.max(4, size * 2));
+        list[size] = productId;
+        postingsSizes[tokenId] = size + 1;
+    }
+
+    /**
+     * Removes a product id from the postings of a token, if present.
+     *
+     * @param tokenId the id of the token contained in the name of the removed product
+     * @param productId the id of the removed product
+     */
+    public void remove(int tokenId, int productId) {
+        if (tokenId < 0 || tokenId >= tokenCount)
+            return;
+
+        int size = postingsSizes[tokenId];
+        int[] list = postings[tokenId];
+        int position = Arrays.binarySearch(list, 0, size, productId);
+        if (position >= 0) {
+            System.arraycopy(list, position + 1, list, position, size - position - 1);
+            postingsSizes[tokenId] = size - 1;
+        }
+    }
+
+    /**
+     * Returns the backing array of the postings of a token. Only the first {@link #postingsSize(int)} elements are valid,
+     * the array must not be modified.
+     *
+     * @param tokenId the id of the token
+     * @return the backing array of the sorted postings
+     */
+    public int[] postings(int tokenId) {
+        return postings[tokenId];
+    }
+
+    /**
+     * Returns the number of product ids in the postings of a token.
+     *
+     * @param tokenId the id of the token
+     * @return the postings size, 0 if the token has never been added
+     */
+    public int postingsSize(int tokenId) {
+        return tokenId >= 0 && tokenId < tokenCount ? postingsSizes[tokenId] : 0;
+    }
+
+    /**
+     * Marks a token as suppressed or lifts its suppression. A token which has never been added can not be suppressed.
+     *
+     * @param tokenId the id of the token
+     * @param suppress true to suppress the token, false to lift the suppression
+     */
+    public void setSuppressed(int tokenId, boolean suppress) {
+        if (tokenId < tokenCount)
+            suppressed[tokenId] = suppress;
+    }
+
+    /**
+     * Determines whether a token is suppressed.
+     *
+     * @param tokenId the id of the token
+     * @return true if the postings of the token should be skipped by lookups
+     */
+    public boolean isSuppressed(int tokenId) {
+        return tokenId < tokenCount && suppressed[tokenId];
+    }
+
+    /**
+     * Shrinks all postings arrays to their exact size, releasing the spare capacity reserved while building the index.
+     */
+    public void trimToSize() {
+        for (int id = 0; id < tokenCount; id++) {
+            if (postings[id].length != postingsSizes[id])
+                postings[id] = postingsSizes[id] == 0 ? EMPTY : Arrays.copyOf(postings[id], postingsSizes[id]);
+        }
+    }
+
+    private void ensureCapacity(int tokenId) {
+        if (tokenId < tokenCount)
+            return;
+
+        if (tokenId >= postings.length) {
+            int capacity = Math.max(postings.length * 2, tokenId + 1);
+            postings = Arrays.copyOf(postings, capacity);
+            postingsSizes = Arrays.copyOf(postingsSizes, capacity);
+            suppressed = Arrays.copyOf(suppressed, capacity);
+        }
+        Arrays.fill(postings, tokenCount, tokenId + 1, EMPTY);
+        tokenCount = tokenId + 1;
+    }
+}
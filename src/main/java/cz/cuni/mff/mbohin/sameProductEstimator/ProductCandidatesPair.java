@@ -0,0 +1,13 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+
+/**
+ * A record that pairs a normalized product with the ids of its candidate products.
+ * This is used to store and manage potential matches for a given product.
+ *
+ * @param product the normalized product
+ * @param candidateIds the sorted ids of candidate products that are potential matches, as assigned by the {@link EshopSubstrings}
+ *                     of the e-shop the candidates come from
+ */
+public record ProductCandidatesPair(NormalizedProduct product, int[] candidateIds) { }
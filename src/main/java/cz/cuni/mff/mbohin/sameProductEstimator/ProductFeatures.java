@@ -0,0 +1,213 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.TokenDictionary;
+
+import java.util.Arrays;
+
+/**
+ * Comparison keys of one product, derived from its name once and read by every similarity calculator, so that no calculator
+ * lowercases, strips or splits a name per compared pair. The keys are:
+ * <ul>
+ * <li>the lowercased name as a range of characters,</li>
+ * <li>the lowercased name stripped of whitespace, as used by the longest common subsequence and edit distance measures,</li>
+ * <li>the characters of the stripped name in sorted order, a multiset of characters used for cheap upper bounds of these measures,</li>
+ * <li>the sorted distinct ids of the lowercased name parts in the shared {@link TokenDictionary}.</li>
+ * </ul>
+ *
+ * <p>The features of the products of an e-shop are a view of the shared buffers of its {@link ProductTable}, every key being
+ * a range of a buffer given by an offset and a length. Features of a product outside any table own buffers of their own.</p>
+ *
+ * <p>Since the token ids and the name characters are sorted, the numbers of tokens and characters shared by two products are
+ * counted by a linear merge of their ranges, which replaces building and probing a hash set of name parts.</p>
+ *
+ * @see EshopSubstrings#featuresById(int)
+ */
+public class ProductFeatures {
+    private final NormalizedProduct product;
+    private final char[] names;
+    private final int nameOffset, nameLength;
+    private final String strippedLowerCaseName;
+    private final char[] sortedCharacters;
+    private final int sortedOffset;
+    private final int[] tokens;
+    private final int tokenOffset, tokenCount;
+
+    /**
+     * Constructs a view of the keys of a product stored in shared buffers. The sorted characters have the length of the stripped name.
+     */
+    ProductFeatures(NormalizedProduct product, char[] names, int nameOffset, int nameLength, String strippedLowerCaseName,
+                    char[] sortedCharacters, int sortedOffset, int[] tokens, int tokenOffset, int tokenCount) {
+        this.product = product;
+        this.names = names;
+        this.nameOffset = nameOffset;
+        this.nameLength = nameLength;
+        this.strippedLowerCaseName = strippedLowerCaseName;
+        this.sortedCharacters = sortedCharacters;
+        this.sortedOffset = sortedOffset;
+        this.tokens = tokens;
+        this.tokenOffset = tokenOffset;
+        this.tokenCount = tokenCount;
+    }
+
+    /**
+     * Computes the comparison keys of a product outside of any {@link ProductTable}. The token ids are taken from the product's inferred data.
+     *
+     * @param product the product whose keys are computed
+     * @return the comparison keys of the product
+     */
+    public static ProductFeatures of(NormalizedProduct product) {
+        char[] lowerCaseName = product.name.toLowerCase().toCharArray();
+        String strippedName = strippedLowerCase(product.name);
+        char[] sortedCharacters = strippedName.toCharArray();
+        Arrays.sort(sortedCharacters);
+        int[] tokenIds = Arrays.stream(product.inferredData.getTokenIds()).sorted().distinct().toArray();
+
+        return new ProductFeatures(product, lowerCaseName, 0, lowerCaseName.length, strippedName, sortedCharacters, 0, tokenIds, 0, tokenIds.length);
+    }
+
+    /**
+     * Returns the product the keys were computed from.
+     *
+     * @return the product
+     */
+    public NormalizedProduct product() {
+        return product;
+    }
+
+    /**
+     * Returns the length of the lowercased name.
+     *
+     * @return the number of characters of the lowercased name
+     */
+    public int nameLength() {
+        return nameLength;
+    }
+
+    /**
+     * Returns the lowercased name without any whitespace characters.
+     *
+     * @return the stripped lowercased name
+     */
+    public String strippedLowerCaseName() {
+        return strippedLowerCaseName;
+    }
+
+    /**
+     * Returns the number of characters of the stripped lowercased name, which is the size of its character multiset.
+     *
+     * @return the length of the stripped name
+     */
+    public int sortedCharacterCount() {
+        return strippedLowerCaseName.length();
+    }
+
+    /**
+     * Returns the number of distinct tokens of the name.
+     *
+     * @return the number of token ids
+     */
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Returns a token id of the name, the ids are distinct and sorted in increasing order.
+     *
+     * @param index the index of the token, from 0 to {@link #tokenCount()}
+     * @return the token id
+     */
+    public int tokenId(int index) {
+        return tokens[tokenOffset + index];
+    }
+
+    /**
+     * Counts the characters the lowercased names of both products share at their beginning.
+     *
+     * @param other the keys of the other product
+     * @return the length of the common prefix of the lowercased names
+     */
+    public int commonPrefixLength(ProductFeatures other) {
+        int length = Math.min(nameLength, other.nameLength);
+        char[] a = names, b = other.names;
+        int i = 0;
+        while (i < length && a[nameOffset + i] == b[other.nameOffset + i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Counts the tokens contained in the names of both products by merging their sorted token ids.
+     *
+     * @param other the keys of the other product
+     * @return the number of shared distinct tokens
+     */
+    public int sharedTokenCount(ProductFeatures other) {
+        int[] a = tokens, b = other.tokens;
+        int i = tokenOffset, j = other.tokenOffset, shared = 0;
+        int endA = tokenOffset + tokenCount, endB = other.tokenOffset + other.tokenCount;
+        while (i < endA && j < endB) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                shared++;
+                i++;
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Counts the characters the stripped names of both products have in common as multisets, i.e. a character occurring
+     * twice in one name and three times in the other counts twice. The count bounds the length of the longest common
+     * subsequence of the stripped names from above.
+     *
+     * @param other the keys of the other product
+     * @return the size of the multiset intersection of the name characters
+     */
+    public int sharedCharacterCount(ProductFeatures other) {
+        char[] a = sortedCharacters, b = other.sortedCharacters;
+        int i = sortedOffset, j = other.sortedOffset, shared = 0;
+        int endA = sortedOffset + sortedCharacterCount(), endB = other.sortedOffset + other.sortedCharacterCount();
+        while (i < endA && j < endB) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                shared++;
+                i++;
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Lowercases a product name and strips it of whitespace, the same way as {@link #strippedLowerCaseName()} is derived.
+     *
+     * @param name the product name
+     * @return the stripped lowercased name
+     */
+    public static String strippedLowerCase(String name) {
+        return stripWhitespace(name.toLowerCase());
+    }
+
+    /**
+     * Removes the whitespace characters matched by the regular expression {@code \s}, i.e. space, tab, line feed,
+     * vertical tab, form feed and carriage return.
+     */
+    private static String stripWhitespace(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r')
+                sb.append(c);
+        }
+        return sb.length() == s.length() ? s : sb.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A columnar in-memory store of the name features of the products of one e-shop, as used by the matching phase. Row i of the table
+ * is the product with the dense id i in {@link EshopSubstrings}. Instead of per-product arrays, the similarity calculators read
+ * shared primitive columns:
+ * <ul>
+ * <li>the lowercased names, one after another in one shared {@code char[]} addressed by offsets,</li>
+ * <li>the characters of the lowercased names stripped of whitespace in increasing order, likewise in one shared {@code char[]},</li>
+ * <li>the sorted distinct ids of the name tokens in the shared {@link cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.TokenDictionary},
+ * in one shared {@code int[]}.</li>
+ * </ul>
+ *
+ * <p>The {@link ProductFeatures} of a row are a view of these buffers read by the similarity calculators, so comparing the
+ * candidates of a product scans adjacent memory. Rows are appended when products are added, the buffers are then grown
+ * geometrically. Views created before a buffer was grown keep reading the previous buffer, whose content for their rows is
+ * unchanged. Removed rows are only marked as removed, their ids are never reused.</p>
+ *
+ * <p>Prices and quantities are not held in columns, as matching does not read them. They are only read from the
+ * {@link NormalizedProduct} when the matched products are clustered and listed.</p>
+ */
+public class ProductTable {
+    private NormalizedProduct[] products;
+    private ProductFeatures[] features;
+
+    private char[] nameCharacters;
+    private int[] nameOffsets;
+    private char[] sortedCharacters;
+    private int[] sortedOffsets;
+    private int[] tokenIds;
+    private int[] tokenOffsets;
+
+    private int rowCount;
+
+    /**
+     * Constructs an empty table.
+     *
+     * @param expectedRows the number of rows to reserve space for
+     * @param expectedNameCharacters the total length of the names to reserve space for
+     * @param expectedTokens the total number of name tokens to reserve space for
+     */
+    public ProductTable(int expectedRows, int expectedNameCharacters, int expectedTokens) {
+        int capacity = Math.max(16, expectedRows);
+        nameCharacters = new char[Math.max(1024, expectedNameCharacters)];
+        sortedCharacters = new char[Math.max(1024, expectedNameCharacters)];
+        tokenIds = new int[Math.max(256, expectedTokens)];
+        products = new NormalizedProduct[capacity];
+        features = new ProductFeatures[capacity];
+        nameOffsets = new int[capacity + 1];
+        sortedOffsets = new int[capacity + 1];
+        tokenOffsets = new int[capacity + 1];
+    }
+
+    /**
+     * Constructs an empty table with the buffers sized for the specified products up front, so that no buffer is grown while
+     * the products are appended.
+     *
+     * @param products the normalized products to be appended, typically the output of an adapter
+     * @return the empty table
+     */
+    public static ProductTable sizedFor(List<NormalizedProduct> products) {
+        int nameCharacters = 0, tokens = 0;
+        for (NormalizedProduct product : products) {
+            nameCharacters += product.name.length();
+            tokens += product.inferredData.getTokenIds().length;
+        }
+        return new ProductTable(products.size(), nameCharacters, tokens);
+    }
+
+    /**
+     * Appends a product as a new row.
+     *
+     * @param product the product to be appended
+     * @return the row of the product
+     */
+    public int append(NormalizedProduct product) {
+        int row = rowCount;
+        if (row == products.length)
+            growRows();
+
+        products[row] = product;
+
+        String lowerCaseName = product.name.toLowerCase();
+        int nameOffset = nameOffsets[row];
+        nameCharacters = ensureCapacity(nameCharacters, nameOffset + lowerCaseName.length());
+        lowerCaseName.getChars(0, lowerCaseName.length(), nameCharacters, nameOffset);
+        nameOffsets[row + 1] = nameOffset + lowerCaseName.length();
+
+        String strippedName = ProductFeatures.strippedLowerCase(product.name);
+        int sortedOffset = sortedOffsets[row];
+        sortedCharacters = ensureCapacity(sortedCharacters, sortedOffset + strippedName.length());
+        strippedName.getChars(0, strippedName.length(), sortedCharacters, sortedOffset);
+        Arrays.sort(sortedCharacters, sortedOffset, sortedOffset + strippedName.length());
+        sortedOffsets[row + 1] = sortedOffset + strippedName.length();
+
+        int[] productTokenIds = Arrays.stream(product.inferredData.getTokenIds()).sorted().distinct().toArray();
+        int tokenOffset = tokenOffsets[row];
+        tokenIds = ensureCapacity(tokenIds, tokenOffset + productTokenIds.length);
+        System.arraycopy(productTokenIds, 0, tokenIds, tokenOffset, productTokenIds.length);
+        tokenOffsets[row + 1] = tokenOffset + productTokenIds.length;
+
+        features[row] = new ProductFeatures(product, nameCharacters, nameOffset, lowerCaseName.length(), strippedName,
+                sortedCharacters, sortedOffset, tokenIds, tokenOffset, productTokenIds.length);
+        rowCount = row + 1;
+        return row;
+    }
+
+    /**
+     * Marks a row as removed. The columns of the row are kept, but its product and features are no longer returned.
+     *
+     * @param row the row to be removed
+     */
+    public void remove(int row) {
+        products[row] = null;
+        features[row] = null;
+    }
+
+    /**
+     * Returns the number of rows appended so far, including removed rows.
+     *
+     * @return the upper bound of the rows
+     */
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the product of a row.
+     *
+     * @param row the row
+     * @return the product, or null if the row has been removed
+     */
+    public NormalizedProduct product(int row) {
+        return products[row];
+    }
+
+    /**
+     * Returns the comparison keys of a row, a view of the name, character and token columns.
+     *
+     * @param row the row
+     * @return the features, or null if the row has been removed
+     */
+    public ProductFeatures features(int row) {
+        return features[row];
+    }
+
+    private void growRows() {
+        int capacity = products.length * 2;
+        products = Arrays.copyOf(products, capacity);
+        features = Arrays.copyOf(features, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+        sortedOffsets = Arrays.copyOf(sortedOffsets, capacity + 1);
+        tokenOffsets = Arrays.copyOf(tokenOffsets, capacity + 1);
+    }
+
+    private static char[] ensureCapacity(char[] buffer, int length) {
+        return length <= buffer.length ? buffer : Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+    }
+
+    private static int[] ensureCapacity(int[] buffer, int length) {
+        return length <= buffer.length ? buffer : Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+    }
+}
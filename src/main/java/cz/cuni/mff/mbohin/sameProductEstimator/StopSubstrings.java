@@ -0,0 +1,62 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A stop-list of name substrings learned from the document frequencies observed in the e-shop catalogues. A substring
+ * cut off by the document frequency cutoff of any {@link EshopSubstrings} is on the stop-list, and substrings on the stop-list
+ * are suppressed in the catalogues of all e-shops, even in catalogues where they are not frequent enough to be cut off,
+ * since a word generic in one e-shop, such as a packaging or unit word, rarely identifies a product in another one.
+ *
+ * <p>The stop-list is learned in one pass once the dictionaries of all e-shops are built, so it does not depend on the order
+ * in which they are built. It is learned from scratch every time, so a substring drops out of it as soon as its document
+ * frequency falls below the cutoff in every e-shop. The learned stop-list is written to a file, one substring per line,
+ * replacing the stop-list learned before. The file records which substrings were suppressed, it is never read back.</p>
+ */
+public class StopSubstrings {
+    private static final Logger LOGGER = Logger.getLogger("StopSubstrings logger");
+
+    /**
+     * Learns the stop-list from the dictionaries of all e-shops and writes it to the stop-list file.
+     * Failures to write the file are logged and otherwise ignored.
+     *
+     * @param dictionaries the dictionaries of all e-shops, with their document frequency cutoff applied
+     * @return the substrings cut off in at least one of the dictionaries, empty if learning is disabled
+     */
+    public static Set<String> learn(Collection<EshopSubstrings> dictionaries) {
+        Set<String> stopSubstrings = new TreeSet<>();
+        if (!RuntimeConfig.learnStopSubstrings)
+            return stopSubstrings;
+
+        for (EshopSubstrings dictionary : dictionaries) {
+            stopSubstrings.addAll(dictionary.cutOffSubstrings());
+        }
+        write(stopSubstrings);
+        return stopSubstrings;
+    }
+
+    private static synchronized void write(Set<String> stopSubstrings) {
+        Path path = Paths.get(RuntimeConfig.stopSubstringsPath);
+        try {
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, "stopSubstrings", ".tmp");
+            Files.write(temporary, stopSubstrings, StandardCharsets.UTF_8);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write stop substrings " + path, e);
+        }
+    }
+}
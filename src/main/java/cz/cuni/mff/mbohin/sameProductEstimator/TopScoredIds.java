@@ -0,0 +1,156 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import java.util.Arrays;
+
+/**
+ * A bounded selection of the best scored ids, backed by a primitive binary min-heap over parallel {@code int[]} and
+ * {@code double[]} arrays. The heap root is the worst of the kept entries, so offering an entry costs O(log K) and no
+ * object is allocated per entry. An id is better than another if its score is higher, equal scores prefer the lower id,
+ * which makes the selection deterministic. Instances are reusable and not thread-safe.
+ */
+public class TopScoredIds {
+    private int[] ids = new int[16];
+    private double[] scores = new double[16];
+    private int size;
+    private int capacity;
+
+    /**
+     * Empties the selection and sets the number of entries to be kept.
+     *
+     * @param capacity the maximum number of kept entries, at least 1
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public void reset(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.size = 0;
+    }
+
+    /**
+     * Offers a scored id to the selection. It is kept if the selection is not full yet or if it is better than the worst kept entry.
+     *
+     * @param id the id
+     * @param score the score of the id
+     * @return true if the id has been kept, false otherwise
+     */
+    public boolean offer(int id, double score) {
+        if (size < capacity) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+
+        if (!isBetter(id, score, ids[0], scores[0]))
+            return false;
+
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0, size);
+        return true;
+    }
+
+    /**
+     * Determines whether the selection holds as many entries as its capacity.
+     *
+     * @return true if the selection is full
+     */
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Returns the score of the worst kept entry. Once the selection is full, entries scoring lower cannot be kept.
+     *
+     * @return the lowest kept score
+     * @throws IllegalStateException if the selection is empty
+     */
+    public double minScore() {
+        if (size == 0)
+            throw new IllegalStateException("Selection is empty.");
+        return scores[0];
+    }
+
+    /**
+     * Returns the number of kept entries.
+     *
+     * @return the number of kept entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the id at the specified position. Positions are in heap order unless {@link #sortDescending()} has been called.
+     *
+     * @param index the position
+     * @return the id at the position
+     */
+    public int id(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Returns the score at the specified position. Positions are in heap order unless {@link #sortDescending()} has been called.
+     *
+     * @param index the position
+     * @return the score at the position
+     */
+    public double score(int index) {
+        return scores[index];
+    }
+
+    /**
+     * Sorts the kept entries from the best to the worst in place by repeatedly moving the heap root behind the shrinking heap.
+     * The selection must be {@link #reset(int)} before further entries are offered.
+     */
+    public void sortDescending() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isBetter(ids[parent], scores[parent], ids[index], scores[index]))
+                break;
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int heapSize) {
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1, right = left + 1;
+            if (left < heapSize && isBetter(ids[worst], scores[worst], ids[left], scores[left]))
+                worst = left;
+            if (right < heapSize && isBetter(ids[worst], scores[worst], ids[right], scores[right]))
+                worst = right;
+            if (worst == index)
+                return;
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    private static boolean isBetter(int id, double score, int otherId, double otherScore) {
+        return score > otherScore || (score == otherScore && id < otherId);
+    }
+}
@@ -0,0 +1,106 @@
+package cz.cuni.mff.mbohin.sameProductEstimator;
+
+import cz.cuni.mff.mbohin.config.RuntimeConfig;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.NormalizedProduct;
+import cz.cuni.mff.mbohin.productParser.normalizedJsonSchema.TokenDictionary;
+
+import java.util.Arrays;
+
+/**
+ * A {@link CandidateIndex} of the character 3-grams of product names lowercased and stripped of whitespace. Since the grams
+ * ignore word boundaries, "Jogurt bílý 150g" and "Bílý jogurt 150 g" share most of their grams, and a typo breaks only
+ * the three grams covering it, while a whitespace-split token would be lost entirely.
+ *
+ * <p>The grams are interned in a {@link TokenDictionary} of the index and kept in a {@link PostingsIndex}. Candidates sharing a gram with a product are merged from the postings
+ * of its grams and weighted by the inverse document frequency {@code ln(1 + N / df)} of the grams. Grams contained in more
+ * than {@link RuntimeConfig#maxTrigramDocumentFrequencyRatio} of the products are skipped, which bounds the postings merged
+ * per lookup. If all grams of a product are that frequent, the least frequent of them is used.</p>
+ */
+public class TrigramIndex implements CandidateIndex {
+    /**
+     * The length of the character grams.
+     */
+    public static final int GRAM_LENGTH = 3;
+
+    private final TokenDictionary gramIds = new TokenDictionary();
+    private final PostingsIndex gramsIndex = new PostingsIndex();
+
+    @Override
+    public void add(int id, NormalizedProduct product) {
+        for (String gram : trigrams(ProductFeatures.strippedLowerCase(product.name))) {
+            gramsIndex.add(gramIds.intern(gram), id);
+        }
+    }
+
+    @Override
+    public void remove(int id, NormalizedProduct product) {
+        for (String gram : trigrams(ProductFeatures.strippedLowerCase(product.name))) {
+            gramsIndex.remove(gramIds.id(gram), id);
+        }
+    }
+
+    @Override
+    public void collectCandidates(NormalizedProduct product, CandidateBuffer buffer, int productCount) {
+        buffer.clear();
+        int maxDocumentFrequency = (int) Math.ceil(RuntimeConfig.maxTrigramDocumentFrequencyRatio * productCount);
+        int rarestFrequentGramId = -1;
+        boolean anyAdded = false;
+        for (String gram : trigrams(ProductFeatures.strippedLowerCase(product.name))) {
+            int gramId = gramIds.id(gram);
+            int documentFrequency = gramsIndex.postingsSize(gramId);
+            if (documentFrequency == 0)
+                continue;
+
+            if (documentFrequency > maxDocumentFrequency) {
+                if (rarestFrequentGramId < 0 || documentFrequency < gramsIndex.postingsSize(rarestFrequentGramId))
+                    rarestFrequentGramId = gramId;
+            } else {
+                anyAdded = true;
+                buffer.addAll(gramsIndex.postings(gramId), documentFrequency, Math.log(1 + (double) productCount / documentFrequency));
+            }
+        }
+        if (!anyAdded && rarestFrequentGramId >= 0) {
+            int documentFrequency = gramsIndex.postingsSize(rarestFrequentGramId);
+            buffer.addAll(gramsIndex.postings(rarestFrequentGramId), documentFrequency, Math.log(1 + (double) productCount / documentFrequency));
+        }
+        buffer.sort();
+    }
+
+    @Override
+    public String describe() {
+        int grams = 0;
+        long references = 0;
+        for (int gramId = 0; gramId < gramsIndex.tokenCount(); gramId++) {
+            if (gramsIndex.postingsSize(gramId) > 0) {
+                grams++;
+                references += gramsIndex.postingsSize(gramId);
+            }
+        }
+        return "Character " + GRAM_LENGTH + "-gram index contains " + grams + " grams with " + references + " product references.";
+    }
+
+    /**
+     * Returns the distinct character 3-grams of a stripped name in increasing order. A name shorter than three characters
+     * is its only gram.
+     *
+     * @param strippedName the lowercased name stripped of whitespace
+     * @return the sorted distinct grams
+     */
+    public static String[] trigrams(String strippedName) {
+        if (strippedName.length() <= GRAM_LENGTH)
+            return strippedName.isEmpty() ? new String[0] : new String[] { strippedName };
+
+        String[] grams = new String[strippedName.length() - GRAM_LENGTH + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = strippedName.substring(i, i + GRAM_LENGTH);
+        }
+        Arrays.sort(grams);
+
+        int distinct = 1;
+        for (int i = 1; i < grams.length; i++) {
+            if (!grams[i].equals(grams[distinct - 1]))
+                grams[distinct++] = grams[i];
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+}